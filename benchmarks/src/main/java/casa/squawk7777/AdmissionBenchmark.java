@@ -0,0 +1,76 @@
+package casa.squawk7777;
+
+import casa.squawk7777.exceptions.BlockchainException;
+import casa.squawk7777.exceptions.InvalidSignatureException;
+import casa.squawk7777.exceptions.TransactionException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transaction admission cost depending on chain length and number of pending transactions.
+ * Every iteration admits a batch of pre-signed transactions into freshly restored blockchain.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, batchSize = AdmissionBenchmark.BATCH_SIZE)
+@Measurement(iterations = 10, batchSize = AdmissionBenchmark.BATCH_SIZE)
+public class AdmissionBenchmark {
+    static final int BATCH_SIZE = 500;
+
+    @Param({"10", "100", "1000"})
+    private int chainLength;
+
+    @Param({"0", "1000", "10000"})
+    private int poolSize;
+
+    private ChainFixture fixture;
+    private BlockStore chain;
+    private Blockchain blockchain;
+    private List<Transaction> transactions;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUpChain() throws BlockchainException {
+        fixture = new ChainFixture(16);
+        chain = fixture.buildChain(chainLength, 1, 10);
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpPool() throws GeneralSecurityException {
+        blockchain = new Blockchain(Integer.MAX_VALUE, ChainFixture.copy(chain));
+        fixture.syncNonces(blockchain);
+        List<Transaction> pending = new ArrayList<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            pending.add(fixture.randomTransfer(1));
+        }
+        blockchain.admitVerifiedTransactions(pending);
+
+        transactions = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            transactions.add(fixture.signedRandomTransfer(1));
+        }
+        next = 0;
+    }
+
+    @Benchmark
+    public void offerTransaction() throws GeneralSecurityException, BlockchainException, InvalidSignatureException, TransactionException {
+        blockchain.offerTransaction(transactions.get(next++));
+    }
+}
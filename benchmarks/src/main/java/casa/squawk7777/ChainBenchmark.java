@@ -0,0 +1,95 @@
+package casa.squawk7777;
+
+import casa.squawk7777.exceptions.BlockchainException;
+import casa.squawk7777.exceptions.InvalidBlockException;
+import casa.squawk7777.exceptions.TransactionException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chain maintenance: block acceptance latency, full chain verification, single and bulk balance lookups and history
+ * lookups against chain length
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ChainBenchmark {
+    @Param({"10", "100", "1000"})
+    private int chainLength;
+
+    private ChainFixture fixture;
+    private BlockStore chain;
+    private Block nextBlock;
+    private Blockchain blockchain;
+    private Blockchain candidateBlockchain;
+
+    @Setup(Level.Trial)
+    public void setUpChain() throws BlockchainException {
+        fixture = new ChainFixture(16);
+        chain = fixture.buildChain(chainLength, 1, 10);
+        nextBlock = fixture.mineRewardBlock(chain.get(chain.size()), 1);
+        blockchain = new Blockchain(Integer.MAX_VALUE, chain);
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpCandidate() {
+        candidateBlockchain = new Blockchain(Integer.MAX_VALUE, ChainFixture.copy(chain));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void offerBlock() throws BlockchainException, InvalidBlockException, TransactionException {
+        candidateBlockchain.offerBlock(nextBlock);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void verifyChain() throws BlockchainException {
+        blockchain.verifyChain();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void verifyChainParallel() throws BlockchainException {
+        blockchain.verifyChain(ForkJoinPool.commonPool());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public long getConfirmedBalance() {
+        return blockchain.getConfirmedBalance(fixture.getAccount(chainLength));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public AccountBalances getConfirmedBalances() {
+        return blockchain.getConfirmedBalances(fixture.getAccounts());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public List<Transaction> getAccountHistory() {
+        return blockchain.getAccountHistory(fixture.getAccount(chainLength), 0, 10);
+    }
+}
@@ -0,0 +1,122 @@
+package casa.squawk7777;
+
+import casa.squawk7777.exceptions.BlockchainException;
+
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+
+/**
+ * Builds valid chains of arbitrary length for benchmarks. Blocks are mined directly with {@link MiningEngine}
+ * at fixed complexity and loaded into a store, so fixture doesn't depend on complexity adjustment timings.
+ */
+class ChainFixture {
+    static final long INITIAL_FUNDS = 1_000_000_000L;
+    private static final String OWNER_TITLE = "BLOCKCHAIN";
+
+    private final Miner owner;
+    private final List<Miner> accounts;
+    private final SplittableRandom random;
+    private final Map<Miner, Long> nonces;
+    private int lastTransactionId;
+
+    ChainFixture(int accountNumber) {
+        this.owner = new Miner(null, OWNER_TITLE, null);
+        this.accounts = new ArrayList<>();
+        this.random = new SplittableRandom(42);
+        this.nonces = new HashMap<>();
+        for (int i = 0; i < accountNumber; i++) {
+            accounts.add(new Miner(null, "Account #" + i));
+        }
+    }
+
+    List<Miner> getAccounts() {
+        return accounts;
+    }
+
+    Miner getAccount(int index) {
+        return accounts.get(index % accounts.size());
+    }
+
+    int getLastTransactionId() {
+        return lastTransactionId;
+    }
+
+    /**
+     * Creates chain where the first block funds every account and each next one carries random unsigned transfers
+     */
+    InMemoryBlockStore buildChain(int length, int complexity, int transfersPerBlock) throws BlockchainException {
+        InMemoryBlockStore store = new InMemoryBlockStore();
+        String lastHash = "0";
+        for (int id = 1; id <= length; id++) {
+            Set<Transaction> transactions = new TreeSet<>();
+            if (id == 1) {
+                accounts.forEach(a -> transactions.add(new Transaction(++lastTransactionId, owner, a, INITIAL_FUNDS)));
+            } else {
+                for (int i = 0; i < transfersPerBlock; i++) {
+                    transactions.add(randomTransfer(1));
+                }
+                transactions.add(new Transaction(++lastTransactionId, owner, getAccount(id), 100));
+            }
+            Block block = mineBlock(id, complexity, lastHash, transactions);
+            store.append(block);
+            lastHash = block.getHash();
+        }
+        return store;
+    }
+
+    Transaction randomTransfer(long amount) {
+        Miner sender = accounts.get(random.nextInt(accounts.size()));
+        Miner recipient;
+        do {
+            recipient = accounts.get(random.nextInt(accounts.size()));
+        } while (recipient.equals(sender));
+        return new Transaction(++lastTransactionId, sender, recipient, amount, nonces.merge(sender, 1L, Long::sum));
+    }
+
+    /**
+     * Continues nonces of every account from the state of given blockchain, so that transfers created next
+     * are accepted by it even if earlier ones were created for another instance
+     */
+    void syncNonces(Blockchain blockchain) {
+        accounts.forEach(a -> nonces.put(a, blockchain.getNextNonce(a) - 1));
+    }
+
+    Transaction signedRandomTransfer(long amount) throws GeneralSecurityException {
+        Transaction transaction = randomTransfer(amount);
+        SecurityUtil.sign(transaction, transaction.getSender().getKeys());
+        return transaction;
+    }
+
+    /**
+     * Creates block for given challenge position which carries only the reward transaction
+     */
+    Block mineRewardBlock(Block lastBlock, int complexity) throws BlockchainException {
+        Set<Transaction> transactions = new TreeSet<>();
+        transactions.add(new Transaction(++lastTransactionId, owner, accounts.get(0), 100));
+        return mineBlock(lastBlock.getId() + 1, complexity, lastBlock.getHash(), transactions);
+    }
+
+    static Block mineBlock(int id, int complexity, String lastHash, Set<Transaction> transactions) throws BlockchainException {
+        byte[] merkleRoot = MerkleTree.of(transactions).getRoot();
+        MiningEngine.Search search = new MiningEngine(merkleRoot, complexity, lastHash).newSearch();
+        long nonce = 0;
+        while (!search.tryNonce(nonce)) {
+            nonce++;
+        }
+        return new Block(id, complexity, nonce, search.getHashString(), BlockchainUtil.toHex(merkleRoot), OWNER_TITLE, transactions);
+    }
+
+    static InMemoryBlockStore copy(BlockStore source) {
+        InMemoryBlockStore store = new InMemoryBlockStore();
+        for (int id = 1; id <= source.size(); id++) {
+            store.append(source.get(id));
+        }
+        return store;
+    }
+}
@@ -0,0 +1,54 @@
+package casa.squawk7777;
+
+import casa.squawk7777.exceptions.BlockchainException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of handing out challenges to miners polling the same chain head against number of pending transactions
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Threads(4)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ChallengeBenchmark {
+    @Param({"0", "1000", "10000"})
+    private int poolSize;
+
+    private ChainFixture fixture;
+    private Blockchain blockchain;
+
+    @Setup(Level.Trial)
+    public void setUp() throws BlockchainException {
+        fixture = new ChainFixture(16);
+        blockchain = new Blockchain(Integer.MAX_VALUE, fixture.buildChain(10, 1, 10));
+        List<Transaction> pending = new ArrayList<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            pending.add(fixture.randomTransfer(1));
+        }
+        blockchain.admitVerifiedTransactions(pending);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Blockchain.Challenge getChallenge() throws BlockchainException {
+        return blockchain.getChallenge(fixture.getAccount(0));
+    }
+}
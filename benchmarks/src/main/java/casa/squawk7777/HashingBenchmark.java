@@ -0,0 +1,65 @@
+package casa.squawk7777;
+
+import casa.squawk7777.exceptions.BlockchainException;
+import casa.squawk7777.exceptions.ChallengeExpiredException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Proof-of-work hot path: raw hash rate and time needed to find block hash at each complexity level
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HashingBenchmark {
+    @Param({"1", "2", "3", "4", "5"})
+    private int complexity;
+
+    private Blockchain.Challenge challenge;
+    private MiningEngine.Search search;
+    private String hashInput;
+    private long nonce;
+
+    @Setup(Level.Trial)
+    public void setUp() throws BlockchainException {
+        ChainFixture fixture = new ChainFixture(2);
+        Blockchain blockchain = new Blockchain(Integer.MAX_VALUE, fixture.buildChain(1, complexity, 0));
+        challenge = blockchain.getChallenge(fixture.getAccount(0));
+        search = MiningEngine.forChallenge(challenge).newSearch();
+        hashInput = challenge.getLastHash() + challenge.getComplexity();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public String calculateHash() throws BlockchainException {
+        return BlockchainUtil.calculateHash(hashInput);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public boolean tryNonce() {
+        return search.tryNonce(nonce++);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Block generateBlock() throws BlockchainException, ChallengeExpiredException {
+        return BlockchainUtil.generateBlock(challenge, "benchmark");
+    }
+}
@@ -0,0 +1,55 @@
+package casa.squawk7777;
+
+import casa.squawk7777.exceptions.InvalidSignatureException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signing and verification of a single transaction by accounts of every signature scheme
+ */
+@State(Scope.Thread)
+@Fork(1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SignatureBenchmark {
+    @Param({"RSA", "ECDSA", "ED25519"})
+    private String scheme;
+
+    private Miner sender;
+    private Transaction transaction;
+
+    @Setup(Level.Trial)
+    public void setUp() throws GeneralSecurityException {
+        SecurityUtil.setDefaultScheme(SignatureScheme.of(scheme));
+        ChainFixture fixture = new ChainFixture(2);
+        transaction = fixture.signedRandomTransfer(1);
+        sender = transaction.getSender();
+    }
+
+    @Benchmark
+    public Transaction sign() throws GeneralSecurityException {
+        SecurityUtil.sign(transaction, sender.getKeys());
+        return transaction;
+    }
+
+    @Benchmark
+    public Transaction verifySignature() throws GeneralSecurityException, InvalidSignatureException {
+        SecurityUtil.verifySignature(transaction);
+        return transaction;
+    }
+}
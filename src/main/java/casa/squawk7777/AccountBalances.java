@@ -0,0 +1,83 @@
+package casa.squawk7777;
+
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Balances of a set of accounts read at the same head version. Open addressing map with primitive values,
+ * so a report over thousands of accounts allocates two arrays instead of an entry and a boxed value per account.
+ * Iteration follows the order accounts were put.
+ */
+public class AccountBalances {
+    private static final int MIN_TABLE_SIZE = 8;
+
+    private final Miner[] keys;
+    private final long[] values;
+    private final int[] order;
+    private final int mask;
+    private int size;
+
+    /**
+     * @param expectedSize number of accounts to be put, the table is sized once to keep load factor at most 1/2
+     */
+    AccountBalances(int expectedSize) {
+        int tableSize = Math.max(MIN_TABLE_SIZE, Integer.highestOneBit(Math.max(1, expectedSize) * 2 - 1) << 1);
+        this.keys = new Miner[tableSize];
+        this.values = new long[tableSize];
+        this.order = new int[tableSize];
+        this.mask = tableSize - 1;
+    }
+
+    /**
+     * Stores balance of the account, the first one wins if the account is put twice
+     */
+    void put(Miner account, long balance) {
+        int slot = slotOf(account);
+        if (keys[slot] == null) {
+            keys[slot] = account;
+            values[slot] = balance;
+            order[size++] = slot;
+        }
+    }
+
+    /**
+     * @return balance of the account or 0 if it wasn't requested
+     */
+    public long get(Miner account) {
+        int slot = slotOf(account);
+        return keys[slot] == null ? 0L : values[slot];
+    }
+
+    public boolean contains(Miner account) {
+        return keys[slotOf(account)] != null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getTotal() {
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total += values[order[i]];
+        }
+        return total;
+    }
+
+    public void forEach(ObjLongConsumer<Miner> action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(keys[order[i]], values[order[i]]);
+        }
+    }
+
+    /**
+     * @return slot holding the account or the empty one where it belongs, linear probing
+     */
+    private int slotOf(Miner account) {
+        int h = account.hashCode() * 0x9e3779b9;
+        int slot = (h ^ (h >>> 16)) & mask;
+        while (keys[slot] != null && !keys[slot].equals(account)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
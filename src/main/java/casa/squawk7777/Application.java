@@ -1,41 +1,159 @@
 package casa.squawk7777;
 
+import casa.squawk7777.exceptions.BlockchainException;
 import com.github.javafaker.Faker;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 public class Application {
-    private static final int THREAD_NUMBER = 4;
+    private static final int ADMISSION_QUEUE_CAPACITY = 1024;
+    private static final int ADMISSION_VERIFIER_NUMBER = 2;
+    private static final int ADMISSION_BATCH_SIZE = 64;
     private static final int MINER_NUMBER = 6;
+    // miners share the hashing pool sized to the core count, so each one gets its share of cores
+    private static final int MINING_PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors() / MINER_NUMBER);
     private static final int BLOCKCHAIN_CAPACITY = 20;
     private static final long NEW_TRANSACTION_DELAY_MS = 400L;
-    private static final long NEW_BLOCK_GENERATION_DELAY_MS = 1000L;
+    private static final String BLOCK_STORE_DIRECTORY_PROPERTY = "blockchain.dir";
+    static final String EXECUTION_MODE_PROPERTY = "blockchain.execution";      // platform or virtual
+    static final String SIGNATURE_SCHEME_PROPERTY = "blockchain.signature";       // rsa, ecdsa or ed25519
+    private static final String CLIENT_NUMBER_PROPERTY = "blockchain.clients";
+    private static final String CAPACITY_PROPERTY = "blockchain.capacity";                // 0 means unbounded chain
+    private static final String CHECKPOINT_INTERVAL_PROPERTY = "blockchain.checkpoint.interval";
+    private static final String CHECKPOINT_DIRECTORY = "checkpoints";
+    private static final String EXPORT_PATH_PROPERTY = "blockchain.export";
+    private static final String EXPORT_FORMAT_PROPERTY = "blockchain.export.format";  // json_lines or binary
+    private static final String NODE_PORT_PROPERTY = "blockchain.node.port";           // enables gossip with other nodes
+    private static final String NODE_PEERS_PROPERTY = "blockchain.node.peers";         // host:port,host:port
+    private static final String NODE_INDEX_PROPERTY = "blockchain.node.index";         // partition of transaction IDs
+    private static final String NODE_COUNT_PROPERTY = "blockchain.node.count";
+    private static final long METRICS_REPORT_PERIOD_SEC = 10L;
 
-    public static void main(String[] args) throws InterruptedException {
-        ScheduledExecutorService executorService = Executors.newScheduledThreadPool(THREAD_NUMBER);
-        Blockchain blockchain = new Blockchain(BLOCKCHAIN_CAPACITY);
-        blockchain.setOnCloseEventHandler(b -> executorService.shutdown());
+    public static void main(String[] args) throws InterruptedException, BlockchainException {
+        ExecutionMode executionMode = ExecutionMode.of(System.getProperty(EXECUTION_MODE_PROPERTY));
+        SecurityUtil.setDefaultScheme(SignatureScheme.of(System.getProperty(SIGNATURE_SCHEME_PROPERTY)));
+        int clientNumber = Integer.getInteger(CLIENT_NUMBER_PROPERTY, 1);
+        ExecutorService clientExecutor = executionMode.newClientExecutor("client");
+        ExecutorService minerExecutor = executionMode.newClientExecutor("miner");
+        ExecutorService miningPool = ExecutionMode.newHashingPool();
+        String blockStoreDirectory = System.getProperty(BLOCK_STORE_DIRECTORY_PROPERTY);
+        BlockStore blockStore = blockStoreDirectory == null
+                ? new InMemoryBlockStore()
+                : new FileBlockStore(Paths.get(blockStoreDirectory));
+        int capacity = Integer.getInteger(CAPACITY_PROPERTY, BLOCKCHAIN_CAPACITY);
+        Integer checkpointInterval = Integer.getInteger(CHECKPOINT_INTERVAL_PROPERTY);
+        CheckpointStore checkpointStore = checkpointInterval == null
+                ? null
+                : new CheckpointStore(getCheckpointDirectory(blockStoreDirectory), checkpointInterval, true);
+        Blockchain blockchain = new Blockchain(capacity > 0 ? capacity : Integer.MAX_VALUE, blockStore, checkpointStore);
+        blockchain.getMetrics().registerMBean();
+        MetricsReporter metricsReporter = new MetricsReporter(blockchain.getMetrics(), METRICS_REPORT_PERIOD_SEC, TimeUnit.SECONDS);
+        TransactionPipeline pipeline = new TransactionPipeline(
+                blockchain, ADMISSION_QUEUE_CAPACITY, ADMISSION_VERIFIER_NUMBER, ADMISSION_BATCH_SIZE);
+        blockchain.setOnCloseEventHandler(b -> {
+            clientExecutor.shutdownNow();       // wakes up thinking clients
+            minerExecutor.shutdown();           // miner loops stop by themselves, one of them is closing the chain right now
+            miningPool.shutdown();
+            pipeline.close();
+        });
+
+        GossipNode node = createNode(blockchain, pipeline);
 
         Faker faker = new Faker(new Random());
         MinerHelper minerHelper = MinerHelper.getInstance();
 
-        executorService.scheduleWithFixedDelay(
-                () -> minerHelper.offerRandomTransaction(blockchain), NEW_TRANSACTION_DELAY_MS, NEW_TRANSACTION_DELAY_MS, TimeUnit.MILLISECONDS);
-
         IntStream.range(0, MINER_NUMBER).forEach(i -> {
-            Miner miner = new Miner(blockchain, faker.funnyName().name());
+            Miner miner = new Miner(blockchain, faker.funnyName().name(), miningPool, MINING_PARALLELISM);
             minerHelper.registerMiner(miner);
-            executorService.scheduleWithFixedDelay(
-                    miner::generateBlock, NEW_BLOCK_GENERATION_DELAY_MS, NEW_BLOCK_GENERATION_DELAY_MS, TimeUnit.MILLISECONDS);
+            minerExecutor.execute(miner::mine);
         });
+        // every client thinks proportionally longer, so overall transaction rate doesn't depend on number of clients
+        IntStream.range(0, clientNumber).forEach(i -> clientExecutor.execute(
+                () -> minerHelper.runClient(blockchain, pipeline, NEW_TRANSACTION_DELAY_MS * clientNumber)));
 
-        executorService.awaitTermination(300, TimeUnit.SECONDS);
-        System.out.println(blockchain);
+        // node starts once local miners are running, peers may close the chain right away
+        if (node != null) {
+            node.start();
+        }
+
+        minerExecutor.awaitTermination(300, TimeUnit.SECONDS);
+        clientExecutor.awaitTermination(1, TimeUnit.SECONDS);
+        metricsReporter.report();
+        metricsReporter.close();
+        for (int id = 1; id <= blockchain.getLastBlock().getId(); id++) {
+            System.out.println(blockchain.getBlockById(id) + "\n");
+        }
+        exportChain(blockchain);
 
         System.out.println("\nSummary:\n" + MinerHelper.getInstance().getBalances(blockchain));
+        if (node != null) {
+            node.close();
+        }
+        blockStore.close();
+    }
+
+    /**
+     * Checkpoints live next to the block store. In-memory chain starts from scratch every run, so its checkpoints go
+     * to a fresh temporary directory: stale ones of another run would be taken as its state otherwise.
+     */
+    private static Path getCheckpointDirectory(String blockStoreDirectory) throws BlockchainException {
+        if (blockStoreDirectory != null) {
+            return Paths.get(blockStoreDirectory).resolve(CHECKPOINT_DIRECTORY);
+        }
+        try {
+            return Files.createTempDirectory(CHECKPOINT_DIRECTORY);
+        } catch (IOException e) {
+            throw new BlockchainException(TextConstants.UNABLE_TO_ACCESS_CHECKPOINTS, e);
+        }
+    }
+
+    /**
+     * Streams the chain to the file given by the export property, if any
+     */
+    private static void exportChain(Blockchain blockchain) throws BlockchainException {
+        String exportPath = System.getProperty(EXPORT_PATH_PROPERTY);
+        if (exportPath == null) {
+            return;
+        }
+        try (ChainWriter writer = new ChainWriter(FileChannel.open(Paths.get(exportPath), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), ChainFormat.of(System.getProperty(EXPORT_FORMAT_PROPERTY)))) {
+            System.out.println("\nExported " + blockchain.exportBlocks(1, Integer.MAX_VALUE, writer) + " blocks to " + exportPath);
+        } catch (IOException e) {
+            throw new BlockchainException(TextConstants.UNABLE_TO_EXPORT_CHAIN, e);
+        }
+    }
+
+    /**
+     * Creates gossip node and makes the blockchain issue transaction IDs of this node's partition
+     *
+     * @return node or null if node mode is not enabled
+     */
+    private static GossipNode createNode(Blockchain blockchain, TransactionPipeline pipeline) throws BlockchainException {
+        Integer port = Integer.getInteger(NODE_PORT_PROPERTY);
+        if (port == null) {
+            return null;
+        }
+        blockchain.setTransactionIdPartition(Integer.getInteger(NODE_INDEX_PROPERTY, 0), Integer.getInteger(NODE_COUNT_PROPERTY, 1));
+        String peers = System.getProperty(NODE_PEERS_PROPERTY, "");
+        List<InetSocketAddress> peerAddresses = Arrays.stream(peers.split(","))
+                .map(String::trim)
+                .filter(peer -> !peer.isEmpty())
+                .map(peer -> new InetSocketAddress(peer.substring(0, peer.lastIndexOf(':')),
+                        Integer.parseInt(peer.substring(peer.lastIndexOf(':') + 1))))
+                .collect(Collectors.toList());
+        return new GossipNode(blockchain, pipeline, port, peerAddresses);
     }
 }
@@ -0,0 +1,249 @@
+package casa.squawk7777;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Canonical binary encoding of blocks and transactions used for hashing, signing, persistence and transport.
+ * <pre>
+ * transaction digest: [id:int][nonce:long][amount:long][sender address:32][recipient address:32]
+ * transaction:        [id:int][nonce:long][amount:long][sender:account][recipient:account][signer key:key][signature:short+bytes]
+ * account:            [address:32][title:short+utf8][public key:key]
+ * key:                [algorithm:byte][encoded:short+bytes], algorithm 0 means no key
+ * block:              [id:int][complexity:int][nonce:long][hash:32][merkle root:32][miner:short+utf8][count:int][transactions]
+ * </pre>
+ * Writing is stateless. Reading restores accounts through the codec's cache, so public key of every account
+ * is decoded only once.
+ */
+public class BinaryCodec {
+    public static final int DIGEST_LENGTH = Integer.BYTES + Long.BYTES * 2 + SecurityUtil.ADDRESS_LENGTH * 2;
+    private static final SignatureScheme[] KEY_SCHEMES = {null, SignatureScheme.RSA, SignatureScheme.ECDSA, SignatureScheme.ED25519};
+    private static final byte SIGNER_IS_SENDER = -1;
+
+    private final Map<ByteBuffer, Miner> accounts;
+
+    public BinaryCodec() {
+        this.accounts = new ConcurrentHashMap<>();
+    }
+
+    public static void writeDigest(ByteBuffer out, Transaction transaction) {
+        out.putInt(transaction.getId())
+                .putLong(transaction.getNonce())
+                .putLong(transaction.getAmount())
+                .put(transaction.getSender().getAddress())
+                .put(transaction.getRecipient().getAddress());
+    }
+
+    public static byte[] getDigest(Transaction transaction) {
+        ByteBuffer digest = ByteBuffer.allocate(DIGEST_LENGTH);
+        writeDigest(digest, transaction);
+        return digest.array();
+    }
+
+    public static int transactionSize(Transaction transaction) {
+        byte[] signature = transaction.getSignature();
+        return Integer.BYTES + Long.BYTES * 2
+                + accountSize(transaction.getSender())
+                + accountSize(transaction.getRecipient())
+                + (isSignedBySender(transaction) ? Byte.BYTES : keySize(transaction.getPublicKey()))
+                + Short.BYTES + (signature == null ? 0 : signature.length);
+    }
+
+    public static void writeTransaction(ByteBuffer out, Transaction transaction) {
+        out.putInt(transaction.getId()).putLong(transaction.getNonce()).putLong(transaction.getAmount());
+        writeAccount(out, transaction.getSender());
+        writeAccount(out, transaction.getRecipient());
+        if (isSignedBySender(transaction)) {
+            out.put(SIGNER_IS_SENDER);
+        } else {
+            PublicKey publicKey = transaction.getPublicKey();
+            writeKey(out, publicKey, publicKey == null ? null : publicKey.getEncoded());
+        }
+        writeBytes(out, transaction.getSignature());
+    }
+
+    public Transaction readTransaction(ByteBuffer in) throws GeneralSecurityException {
+        int id = in.getInt();
+        long nonce = in.getLong();
+        long amount = in.getLong();
+        Miner sender = readAccount(in);
+        Miner recipient = readAccount(in);
+        Transaction transaction = new Transaction(id, sender, recipient, amount, nonce);
+
+        PublicKey publicKey;
+        if (in.get(in.position()) == SIGNER_IS_SENDER) {
+            in.get();
+            publicKey = sender.getPublicKey();
+        } else {
+            publicKey = readKey(in);
+        }
+        byte[] signature = readBytes(in);
+        if (signature != null) {
+            transaction.sign(signature, publicKey);
+        }
+        return transaction;
+    }
+
+    public static int blockSize(Block block) {
+        int size = Integer.BYTES * 2 + Long.BYTES + MiningEngine.HASH_LENGTH + MerkleTree.HASH_LENGTH
+                + Short.BYTES + utf8Length(block.getMiner())
+                + Integer.BYTES;
+        for (Transaction transaction : block.getTransactions()) {
+            size += transactionSize(transaction);
+        }
+        return size;
+    }
+
+    public static void writeBlock(ByteBuffer out, Block block) {
+        out.putInt(block.getId())
+                .putInt(block.getComplexity())
+                .putLong(block.getNonce())
+                .put(BlockchainUtil.fromHex(block.getHash()))
+                .put(BlockchainUtil.fromHex(block.getMerkleRoot()));
+        writeBytes(out, block.getMiner().getBytes(StandardCharsets.UTF_8));
+        out.putInt(block.getTransactions().size());
+        for (Transaction transaction : block.getTransactions()) {
+            writeTransaction(out, transaction);
+        }
+    }
+
+    public static byte[] encodeBlock(Block block) {
+        ByteBuffer out = ByteBuffer.allocate(blockSize(block));
+        writeBlock(out, block);
+        return out.array();
+    }
+
+    public Block readBlock(ByteBuffer in) throws GeneralSecurityException {
+        int id = in.getInt();
+        int complexity = in.getInt();
+        long nonce = in.getLong();
+        byte[] hash = new byte[MiningEngine.HASH_LENGTH];
+        in.get(hash);
+        byte[] merkleRoot = new byte[MerkleTree.HASH_LENGTH];
+        in.get(merkleRoot);
+        String miner = readString(in);
+        int transactionNumber = in.getInt();
+        Set<Transaction> transactions = new TreeSet<>();
+        for (int i = 0; i < transactionNumber; i++) {
+            transactions.add(readTransaction(in));
+        }
+        return new Block(id, complexity, nonce, BlockchainUtil.toHex(hash), BlockchainUtil.toHex(merkleRoot), miner, transactions);
+    }
+
+    static int accountSize(Miner miner) {
+        byte[] encodedKey = miner.getEncodedPublicKey();
+        return SecurityUtil.ADDRESS_LENGTH
+                + Short.BYTES + miner.getEncodedTitle().length
+                + Byte.BYTES + Short.BYTES + (encodedKey == null ? 0 : encodedKey.length);
+    }
+
+    static void writeAccount(ByteBuffer out, Miner miner) {
+        out.put(miner.getAddress());
+        writeBytes(out, miner.getEncodedTitle());
+        writeKey(out, miner.getPublicKey(), miner.getEncodedPublicKey());
+    }
+
+    /**
+     * Restores account, decoding its public key only the first time the address is met. The address must be derived
+     * from the key, otherwise an account with forged address would be cached and reused for every later reference.
+     */
+    Miner readAccount(ByteBuffer in) throws GeneralSecurityException {
+        byte[] address = new byte[SecurityUtil.ADDRESS_LENGTH];
+        in.get(address);
+        Miner known = accounts.get(ByteBuffer.wrap(address));
+        if (known != null) {
+            skipBytes(in);
+            in.get();
+            skipBytes(in);
+            return known;
+        }
+        String title = readString(in);
+        Miner miner = new Miner(null, title, readKey(in));
+        if (!Arrays.equals(miner.getAddress(), address)) {
+            throw new GeneralSecurityException(TextConstants.ACCOUNT_ADDRESS_MISMATCH);
+        }
+        Miner previous = accounts.putIfAbsent(ByteBuffer.wrap(address), miner);
+        return previous == null ? miner : previous;
+    }
+
+    static boolean isSignedBySender(Transaction transaction) {
+        return transaction.getPublicKey() != null && transaction.getPublicKey().equals(transaction.getSender().getPublicKey());
+    }
+
+    private static int keySize(PublicKey publicKey) {
+        return Byte.BYTES + Short.BYTES + (publicKey == null ? 0 : publicKey.getEncoded().length);
+    }
+
+    private static void writeKey(ByteBuffer out, PublicKey publicKey, byte[] encodedKey) {
+        out.put(publicKey == null ? 0 : getSchemeCode(publicKey));
+        writeBytes(out, encodedKey);
+    }
+
+    private static PublicKey readKey(ByteBuffer in) throws GeneralSecurityException {
+        byte algorithm = in.get();
+        byte[] encodedKey = readBytes(in);
+        if (algorithm == 0) {
+            return null;
+        }
+        if (algorithm < 0 || algorithm >= KEY_SCHEMES.length) {
+            throw new GeneralSecurityException(TextConstants.UNSUPPORTED_KEY_ALGORITHM);
+        }
+        return KEY_SCHEMES[algorithm].decodePublicKey(encodedKey);
+    }
+
+    private static byte getSchemeCode(PublicKey publicKey) {
+        try {
+            SignatureScheme scheme = SignatureScheme.forKey(publicKey);
+            for (byte i = 1; i < KEY_SCHEMES.length; i++) {
+                if (KEY_SCHEMES[i] == scheme) {
+                    return i;
+                }
+            }
+        } catch (NoSuchAlgorithmException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException(TextConstants.UNSUPPORTED_KEY_ALGORITHM + ": " + publicKey.getAlgorithm());
+    }
+
+    private static void writeBytes(ByteBuffer out, byte[] bytes) {
+        out.putShort((short) (bytes == null ? 0 : bytes.length));
+        if (bytes != null) {
+            out.put(bytes);
+        }
+    }
+
+    /**
+     * @return bytes or null when length is zero
+     */
+    private static byte[] readBytes(ByteBuffer in) {
+        int length = in.getShort() & 0xFFFF;
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return bytes;
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = readBytes(in);
+        return bytes == null ? "" : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void skipBytes(ByteBuffer in) {
+        int length = in.getShort() & 0xFFFF;
+        in.position(in.position() + length);
+    }
+
+    private static int utf8Length(String value) {
+        return value.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
@@ -1,6 +1,10 @@
 package casa.squawk7777;
 
+import casa.squawk7777.exceptions.BlockchainException;
+
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -9,20 +13,41 @@ public class Block {
     private final int complexity;
     private final long nonce;
     private final String hash;
+    private final String merkleRoot;
     private final String miner;
     private final Set<Transaction> transactions;
+    private final boolean isPruned;
 
     public Block(Integer id, String hash) {
-        this(id, 1, 0L, hash, "", new HashSet<>());
+        this(id, 1, 0L, hash, BlockchainUtil.toHex(new MerkleTree().getRoot()), "", new HashSet<>());
+    }
+
+    public Block(Integer id, int complexity, long nonce, String hash, String merkleRoot, String miner, Set<Transaction> transactions) {
+        this(id, complexity, nonce, hash, merkleRoot, miner, transactions, false);
     }
 
-    public Block(Integer id, int complexity, long nonce, String hash, String miner, Set<Transaction> transactions) {
+    private Block(Integer id, int complexity, long nonce, String hash, String merkleRoot, String miner, Set<Transaction> transactions,
+                  boolean isPruned) {
         this.id = id;
         this.complexity = complexity;
         this.nonce = nonce;
         this.hash = hash;
+        this.merkleRoot = merkleRoot;
         this.miner = miner;
         this.transactions = transactions;
+        this.isPruned = isPruned;
+    }
+
+    /**
+     * Returns header of this block without transactions. Its hash can still be verified against the Merkle root,
+     * but transactions themselves are not available anymore.
+     */
+    public Block toHeader() {
+        return isPruned ? this : new Block(id, complexity, nonce, hash, merkleRoot, miner, TransactionSet.empty(), true);
+    }
+
+    public boolean isPruned() {
+        return isPruned;
     }
 
     public Integer getId() {
@@ -41,10 +66,48 @@ public class Block {
         return hash;
     }
 
+    /**
+     * @return root of the Merkle tree over block transactions, the block hash commits to transactions through it
+     */
+    public String getMerkleRoot() {
+        return merkleRoot;
+    }
+
+    /**
+     * Builds inclusion proof which can be checked against the Merkle root without the rest of the block
+     *
+     * @return proof or null if transaction is not stored in the block
+     */
+    public MerkleTree.Proof getInclusionProof(Transaction transaction) throws BlockchainException {
+        return transactions.contains(transaction) ? MerkleTree.of(transactions).getProof(transaction) : null;
+    }
+
+    public String getMiner() {
+        return miner;
+    }
+
     public Set<Transaction> getTransactions() {
         return transactions;
     }
 
+    /**
+     * @return transaction at given position of the ID ordered block content
+     */
+    public Transaction getTransactionAt(int position) {
+        if (transactions instanceof TransactionSet) {
+            return ((TransactionSet) transactions).getAt(position);
+        }
+        Iterator<Transaction> iterator = getOrderedTransactions().iterator();
+        for (int i = 0; i < position; i++) {
+            iterator.next();
+        }
+        return iterator.next();
+    }
+
+    Collection<Transaction> getOrderedTransactions() {
+        return TransactionSet.inIdOrder(transactions);
+    }
+
     @Override
     public String toString() {
         return "Block ID: " + id +
@@ -52,6 +115,7 @@ public class Block {
                 "\nSalt: " + nonce +
                 "\nMined by: " + miner +
                 "\nCurrent block hash:\n" + hash +
+                "\nMerkle root:\n" + merkleRoot +
                 "\nWorkload stored:\n" + transactions.stream()
                 .map(Transaction::toString)
                 .collect(Collectors.joining("\n"));
@@ -0,0 +1,146 @@
+package casa.squawk7777;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+import java.util.function.ToLongFunction;
+
+/**
+ * Selects pending transactions for block template within transaction number and encoded size limits.
+ * Transactions of the same sender are taken strictly in nonce order, among senders the one whose next transaction
+ * has the highest priority (the amount, until fees exist) goes first. Heads of per-sender queues are kept ordered
+ * and updated on every admission or removal, so building template costs {@code O(k log k)} for {@code k} selected
+ * transactions regardless of the pool size. Transaction is skipped together with the rest of its sender's queue
+ * if the sender can't afford it with confirmed balance and transfers already selected.
+ * Not thread-safe, it is expected to be used under the blockchain write lock.
+ */
+public class BlockAssembler {
+    static final Comparator<Transaction> PRIORITY = Comparator.comparingLong(Transaction::getAmount).reversed()
+            .thenComparing(Transaction::getId);
+    static final Comparator<Transaction> NONCE_ORDER = Comparator.comparingLong(Transaction::getNonce)
+            .thenComparing(Transaction::getId);
+
+    private final int maxTransactions;
+    private final long maxBytes;
+    private final Map<Miner, NavigableSet<Transaction>> queuesBySender;
+    private final NavigableSet<Transaction> heads;
+
+    /**
+     * @param maxTransactions maximum number of pooled transactions in the block, reward transaction is not counted
+     * @param maxBytes        maximum encoded size of pooled transactions in the block
+     */
+    public BlockAssembler(int maxTransactions, long maxBytes) {
+        this.maxTransactions = maxTransactions;
+        this.maxBytes = maxBytes;
+        this.queuesBySender = new HashMap<>();
+        this.heads = new TreeSet<>(PRIORITY);
+    }
+
+    public int getMaxTransactions() {
+        return maxTransactions;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Adds transaction accepted to the pool
+     */
+    public void add(Transaction transaction) {
+        NavigableSet<Transaction> queue = queuesBySender.computeIfAbsent(transaction.getSender(), m -> new TreeSet<>(NONCE_ORDER));
+        Transaction head = queue.isEmpty() ? null : queue.first();
+        queue.add(transaction);
+        if (head == null || NONCE_ORDER.compare(transaction, head) < 0) {
+            if (head != null) {
+                heads.remove(head);
+            }
+            heads.add(transaction);
+        }
+    }
+
+    /**
+     * Removes transaction which left the pool (e.g. stored in just added block)
+     */
+    public void remove(Transaction transaction) {
+        NavigableSet<Transaction> queue = queuesBySender.get(transaction.getSender());
+        if (queue == null || !queue.remove(transaction)) {
+            return;
+        }
+        if (heads.remove(transaction) && !queue.isEmpty()) {
+            heads.add(queue.first());
+        }
+        if (queue.isEmpty()) {
+            queuesBySender.remove(transaction.getSender());
+        }
+    }
+
+    /**
+     * Removes transactions of the sender which nonces are already taken by the chain (e.g. by a conflicting
+     * transaction of a block received from a peer)
+     *
+     * @return removed transactions
+     */
+    public List<Transaction> removeStale(Miner sender, long confirmedNonce) {
+        List<Transaction> removed = new ArrayList<>();
+        NavigableSet<Transaction> queue = queuesBySender.get(sender);
+        while (queue != null && !queue.isEmpty() && queue.first().getNonce() <= confirmedNonce) {
+            Transaction stale = queue.first();
+            remove(stale);
+            removed.add(stale);
+        }
+        return removed;
+    }
+
+    /**
+     * Builds block template: transactions chosen by priority and returned in canonical ID order
+     *
+     * @param confirmedBalance balance of the account confirmed by the chain
+     */
+    public TransactionSet buildTemplate(ToLongFunction<Miner> confirmedBalance) {
+        List<Transaction> selected = new ArrayList<>(Math.min(maxTransactions, heads.size()));
+        Map<Miner, Long> selectedDeltas = new HashMap<>();
+        PriorityQueue<Transaction> successors = new PriorityQueue<>(PRIORITY);
+        Iterator<Transaction> headIterator = heads.iterator();
+        Transaction nextHead = headIterator.hasNext() ? headIterator.next() : null;
+        long bytes = 0;
+
+        while (selected.size() < maxTransactions) {
+            Transaction candidate;
+            if (nextHead != null && (successors.isEmpty() || PRIORITY.compare(nextHead, successors.peek()) < 0)) {
+                candidate = nextHead;
+                nextHead = headIterator.hasNext() ? headIterator.next() : null;
+            } else if (!successors.isEmpty()) {
+                candidate = successors.poll();
+            } else {
+                break;
+            }
+
+            Miner sender = candidate.getSender();
+            long available = confirmedBalance.applyAsLong(sender) + selectedDeltas.getOrDefault(sender, 0L);
+            if (candidate.getAmount() > available) {
+                continue;
+            }
+            int size = BinaryCodec.transactionSize(candidate);
+            if (bytes + size > maxBytes) {
+                break;
+            }
+
+            selected.add(candidate);
+            bytes += size;
+            selectedDeltas.merge(sender, -candidate.getAmount(), Long::sum);
+            selectedDeltas.merge(candidate.getRecipient(), candidate.getAmount(), Long::sum);
+            Transaction successor = queuesBySender.get(sender).higher(candidate);
+            if (successor != null) {
+                successors.add(successor);
+            }
+        }
+        return TransactionSet.of(selected);
+    }
+}
@@ -0,0 +1,37 @@
+package casa.squawk7777;
+
+import casa.squawk7777.exceptions.BlockchainException;
+
+/**
+ * Storage of blocks appended to the chain. Block IDs start with 1 and go without gaps.
+ */
+public interface BlockStore extends AutoCloseable {
+    void append(Block block) throws BlockchainException;
+
+    Block get(int id);
+
+    int size();
+
+    /**
+     * Evicts bodies of blocks up to given ID from memory, their headers stay available.
+     * Stores which don't keep bodies on the heap may ignore it.
+     */
+    default void prune(int lastId) {}
+
+    /**
+     * @return whether {@link #prune(int)} evicts anything, so that pruning may skip reading blocks it would evict
+     */
+    default boolean isPruningSupported() {
+        return false;
+    }
+
+    /**
+     * Removes the last block (e.g. when it is replaced by a competing block of the same height)
+     */
+    default void removeLast() throws BlockchainException {
+        throw new BlockchainException(TextConstants.UNABLE_TO_REMOVE_BLOCK);
+    }
+
+    @Override
+    void close() throws BlockchainException;
+}
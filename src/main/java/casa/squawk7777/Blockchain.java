@@ -8,20 +8,31 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.security.GeneralSecurityException;
+import java.time.Clock;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.StampedLock;
 import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.stream.IntStream;
 
 public class Blockchain {
-    public static final String TRANSACTION_ID_IS_TOO_LOW = "Transaction ID is equals or lower than highest existing transaction ID";
     private static final Logger log = LoggerFactory.getLogger(Blockchain.class);
     private static final long MIN_TIME_GAP = 5000L;
     private static final long MAX_TIME_GAP = 30000L;
@@ -30,80 +41,545 @@ public class Blockchain {
     private static final int INITIAL_COMPLEXITY = 3;
     private static final String SEEKING_AL_NUM_CHAR = "0";
     private static final String BLOCKCHAIN_OWNER_TITLE = "BLOCKCHAIN";
+    public static final int DEFAULT_MAX_BLOCK_TRANSACTIONS = 1000;
+    public static final long DEFAULT_MAX_BLOCK_BYTES = 1024L * 1024;
+    private static final int REPLAY_FILTER_INITIAL_CAPACITY = 1 << 16;
+    private static final double REPLAY_FILTER_FALSE_POSITIVE_RATE = 0.01;
+    private static final int MAX_PARKED_NONCE_GAP = 64;
 
     private final Miner chainOwner;
-    private final List<Block> chain;
-    private final Set<Transaction> transactionPool;
+    private final BlockStore chain;
+    private final CheckpointStore checkpointStore;
+    private final Mempool transactionPool;
+    private final BlockAssembler blockAssembler;
+    private final Ledger ledger;
+    private final TransactionIndex transactionIndex;
+    private final ScalableBloomFilter replayFilter;
     private final AtomicInteger complexity;
     private final AtomicInteger lastTransactionId;
     private final StampedLock stateLock;
+    private final BlockchainMetrics metrics;
+    private final AtomicReference<Snapshot> head;
+    private final List<BlockchainListener> listeners;
     private final int chainCapacity;
+    private final Clock clock;
 
-    private volatile AtomicBoolean isChallengeDone;     // we have to be sure that reference is always fresh
     private volatile boolean isClosed;
+    private volatile boolean isComplexityFixed;
+    private volatile boolean isProofOfWorkSimulated;
+    private volatile int idPartitionIndex;
+    private volatile int idPartitionCount = 1;
 
+    private int highestTransactionId;
+    private int prunedHeight;
+    private int prunedTransactionIdBound;
     private long lastBlockTime;
+    private long writeLockAcquiredAt;
     private Consumer<Blockchain> onCloseEventHandler;
 
     public Blockchain(int chainCapacity) {
+        this(chainCapacity, new InMemoryBlockStore());
+    }
+
+    /**
+     * Creates blockchain on top of given block store, blocks already present in the store are loaded as trusted
+     */
+    public Blockchain(int chainCapacity, BlockStore blockStore) {
+        this(chainCapacity, blockStore, DEFAULT_MAX_BLOCK_TRANSACTIONS, DEFAULT_MAX_BLOCK_BYTES, null);
+    }
+
+    /**
+     * Creates blockchain which periodically writes ledger checkpoints and starts from the latest of them
+     */
+    public Blockchain(int chainCapacity, BlockStore blockStore, CheckpointStore checkpointStore) {
+        this(chainCapacity, blockStore, DEFAULT_MAX_BLOCK_TRANSACTIONS, DEFAULT_MAX_BLOCK_BYTES, checkpointStore);
+    }
+
+    /**
+     * Creates blockchain which blocks carry limited number of pooled transactions (besides the reward one)
+     * of limited total encoded size
+     *
+     * @param checkpointStore store of ledger checkpoints or null if checkpoints are disabled
+     */
+    public Blockchain(int chainCapacity, BlockStore blockStore, int maxBlockTransactions, long maxBlockBytes, CheckpointStore checkpointStore) {
+        this(chainCapacity, blockStore, maxBlockTransactions, maxBlockBytes, checkpointStore, Clock.systemUTC());
+    }
+
+    /**
+     * Creates blockchain which measures time gaps between blocks with given clock (e.g. simulated one)
+     */
+    public Blockchain(int chainCapacity, BlockStore blockStore, int maxBlockTransactions, long maxBlockBytes, CheckpointStore checkpointStore,
+                      Clock clock) {
         this.chainCapacity = chainCapacity;
-        this.chainOwner = new Miner(this, BLOCKCHAIN_OWNER_TITLE);
-        this.chain = new ArrayList<>();
-        this.transactionPool = Collections.synchronizedSet(new TreeSet<>());
+        this.clock = clock;
+        this.chainOwner = new Miner(this, BLOCKCHAIN_OWNER_TITLE, null);
+        this.chain = blockStore;
+        this.checkpointStore = checkpointStore;
+        this.transactionPool = new Mempool();
+        this.blockAssembler = new BlockAssembler(maxBlockTransactions, maxBlockBytes);
+        this.ledger = new Ledger();
+        this.transactionIndex = new TransactionIndex();
+        this.replayFilter = new ScalableBloomFilter(REPLAY_FILTER_INITIAL_CAPACITY, REPLAY_FILTER_FALSE_POSITIVE_RATE);
         this.complexity = new AtomicInteger(INITIAL_COMPLEXITY);
         this.lastTransactionId = new AtomicInteger(0);
         this.stateLock = new StampedLock();
-        this.isChallengeDone = new AtomicBoolean(false);
-        this.lastBlockTime = System.currentTimeMillis();
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.metrics = new BlockchainMetrics();
+        this.metrics.setMempoolDepth(transactionPool::size);
+        this.lastBlockTime = clock.millis();
+        restoreState();
+        this.head = new AtomicReference<>(new Snapshot(0L, getBlockById(chain.size()), complexity.get(),
+                transactionPool.snapshot(), new AtomicBoolean(false)));
     }
 
-    public void offerTransaction(Transaction transaction) throws TransactionException, GeneralSecurityException, InvalidSignatureException, BlockchainException {
-        SecurityUtil.verifySignature(transaction);
+    /**
+     * Replays stored blocks into the ledger, transaction index and replay filter, restores transaction ID counter
+     * and complexity. If there is a checkpoint matching the stored chain, the ledger and the index are loaded from it
+     * and only blocks after it are decoded and replayed, so restart cost doesn't grow with the covered history.
+     * Transactions of blocks pruned by an earlier run are not indexed, their IDs are guarded by sender nonces only.
+     */
+    private void restoreState() {
+        int checkpointHeight = 0;
+        Checkpoint checkpoint = loadCheckpoint();
+        if (checkpoint != null) {
+            ledger.restoreConfirmed(checkpoint.getBalances(), checkpoint.getNonces());
+            transactionIndex.restore(checkpoint.getTransactionIndex());
+            checkpoint.getTransactionIndex().getTransactionIds().forEach(replayFilter::add);
+            highestTransactionId = checkpoint.getHighestTransactionId();
+            checkpointHeight = checkpoint.getHeight();
+            log.info("Restored ledger from checkpoint at height {}", checkpointHeight);
+        }
 
-        long stamp = stateLock.writeLock();
+        for (int id = checkpointHeight + 1; id <= chain.size(); id++) {
+            Block block = chain.get(id);
+            for (Transaction transaction : block.getTransactions()) {
+                ledger.confirm(transaction, false);
+                replayFilter.add(transaction.getId());
+                highestTransactionId = Math.max(highestTransactionId, transaction.getId());
+            }
+            transactionIndex.addBlock(block);
+        }
+        if (checkpoint != null && checkpointStore.isPruningEnabled()) {
+            pruneThrough(checkpointHeight);
+        }
+        if (chain.size() > 0) {
+            lastTransactionId.set(highestTransactionId);
+            complexity.set(chain.get(chain.size()).getComplexity());
+            isClosed = chain.size() >= chainCapacity;
+            log.info("Restored {} blocks, last block hash: {}", chain.size(), chain.get(chain.size()).getHash());
+        }
+    }
+
+    /**
+     * @return the latest checkpoint which head matches the stored chain or null
+     */
+    private Checkpoint loadCheckpoint() {
+        if (checkpointStore == null) {
+            return null;
+        }
         try {
-            if (isClosed) {
-                throw new BlockchainException(TextConstants.BLOCKCHAIN_CLOSED);
+            Checkpoint checkpoint = checkpointStore.loadLatest(chain.size());
+            if (checkpoint != null && !checkpoint.getHeadHash().equals(chain.get(checkpoint.getHeight()).getHash())) {
+                log.warn("Checkpoint at height {} doesn't match stored chain, replaying all blocks", checkpoint.getHeight());
+                return null;
             }
+            return checkpoint;
+        } catch (BlockchainException e) {
+            log.warn("Unable to load checkpoint, replaying all blocks: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    public void offerTransaction(Transaction transaction) throws TransactionException, GeneralSecurityException, InvalidSignatureException, BlockchainException {
+        long startedAt = System.nanoTime();
+        List<Transaction> accepted;
+        try {
+            SecurityUtil.verifySignature(transaction);
 
-            if (transactionPool.stream().anyMatch(t -> t.getId().equals(transaction.getId()))) {
-                throw new TransactionException(TextConstants.TRANSACTION_ALREADY_EXIST);
+            long stamp = lockWrite();
+            try {
+                accepted = admitTransaction(transaction);
+                if (!accepted.isEmpty()) {
+                    publishHead(false);
+                }
+            } finally {
+                unlockWrite(stamp);
             }
+        } catch (TransactionException | GeneralSecurityException | InvalidSignatureException | BlockchainException e) {
+            metrics.recordRejected(e);
+            throw e;
+        }
+        if (!accepted.isEmpty()) {
+            fireHeadChanged(null, accepted);
+        }
+        metrics.recordAccepted(System.nanoTime() - startedAt);
+    }
 
-            if (transaction.getId() <= getHighestTransactionId()) {
-                throw new TransactionException(TRANSACTION_ID_IS_TOO_LOW);
+    /**
+     * Admits batch of transactions which signatures are already verified, taking the lock once per batch
+     *
+     * @return rejection reasons in the order of given transactions, null for accepted (pending or parked) ones
+     */
+    List<Exception> admitVerifiedTransactions(List<Transaction> transactions) {
+        List<Exception> results = new ArrayList<>(transactions.size());
+        List<Transaction> accepted = new ArrayList<>(transactions.size());
+        long stamp = lockWrite();
+        try {
+            for (Transaction transaction : transactions) {
+                try {
+                    accepted.addAll(admitTransaction(transaction));
+                    results.add(null);
+                } catch (TransactionException | BlockchainException e) {
+                    metrics.recordRejected(e);
+                    results.add(e);
+                }
             }
+            if (!accepted.isEmpty()) {
+                publishHead(false);
+            }
+        } finally {
+            unlockWrite(stamp);
+        }
+        if (!accepted.isEmpty()) {
+            fireHeadChanged(null, accepted);
+        }
+        return results;
+    }
 
-            if (transaction.getAmount() > getEstimatedBalance(transaction.getSender())) {
+    /**
+     * Checks whether transaction ID is already confirmed. The replay filter answers most checks without touching
+     * the index, only its probable hits are confirmed by the exact lookup. Pruned transactions are no longer indexed,
+     * so a hit on ID not above the highest pruned one is taken as confirmed: an unconfirmed transaction reusing
+     * such an old ID may be rejected by mistake, while fresh IDs issued by the chain are always above it.
+     */
+    private boolean isConfirmed(Transaction transaction) {
+        if (!replayFilter.mightContain(transaction.getId())) {
+            metrics.recordReplayCheckSkipped();
+            return false;
+        }
+        if (transactionIndex.getLocation(transaction.getId()) >= 0 || transaction.getId() <= prunedTransactionIdBound) {
+            return true;
+        }
+        metrics.recordReplayFilterFalsePositive();
+        return false;
+    }
+
+    /**
+     * Admits transaction to the pool, must be called under the write lock. Transaction which nonce is ahead of
+     * the sender's next one by at most {@value #MAX_PARKED_NONCE_GAP} is parked until the gap is filled,
+     * if the sender can afford it together with its other parked transactions.
+     *
+     * @return transactions which became pending: the given one followed by parked ones it unblocked,
+     * empty if it is parked
+     */
+    private List<Transaction> admitTransaction(Transaction transaction) throws BlockchainException, TransactionException {
+        if (isClosed) {
+            throw new BlockchainException(TextConstants.BLOCKCHAIN_CLOSED);
+        }
+
+        if (transactionPool.containsId(transaction.getId()) || transactionPool.isParked(transaction.getId()) || isConfirmed(transaction)) {
+            throw new TransactionException(TextConstants.TRANSACTION_ALREADY_EXIST);
+        }
+
+        long nextNonce = ledger.getNextNonce(transaction.getSender());
+        if (transaction.getNonce() < nextNonce || transaction.getNonce() > nextNonce + MAX_PARKED_NONCE_GAP) {
+            throw new TransactionException(TextConstants.INVALID_NONCE);
+        }
+        if (transaction.getNonce() > nextNonce) {
+            if (transaction.getAmount() + transactionPool.getParkedAmount(transaction.getSender()) > getEstimatedBalance(transaction.getSender())) {
                 throw new TransactionException(TextConstants.SENDER_IS_SHORT_ON_FUNDS);
             }
-            log.debug("Transaction accepted to pool: {}", transaction);
+            if (!transactionPool.park(transaction)) {
+                throw new TransactionException(TextConstants.INVALID_NONCE);
+            }
+            log.debug("Transaction parked until nonce {} of {} arrives: {}", nextNonce, transaction.getSender().getTitle(), transaction);
+            return List.of();
+        }
 
-            transactionPool.add(transaction);
-        } finally {
-            stateLock.unlockWrite(stamp);
+        if (transaction.getAmount() > getEstimatedBalance(transaction.getSender())) {
+            throw new TransactionException(TextConstants.SENDER_IS_SHORT_ON_FUNDS);
+        }
+        log.debug("Transaction accepted to pool: {}", transaction);
+
+        addPending(transaction);
+        List<Transaction> accepted = new ArrayList<>();
+        accepted.add(transaction);
+        promoteParked(transaction.getSender(), accepted);
+        return accepted;
+    }
+
+    private void addPending(Transaction transaction) {
+        transactionPool.add(transaction);
+        blockAssembler.add(transaction);
+        ledger.addPending(transaction);
+        lastTransactionId.accumulateAndGet(transaction.getId(), Math::max);     // reward IDs must follow pending ones
+    }
+
+    /**
+     * Moves parked transactions of the sender to the pool while they follow its next nonce, must be called under
+     * the write lock. Transaction the sender can no longer afford (earlier ones spent more than it had when parked)
+     * is dropped, its nonce is left for the sender to reuse.
+     *
+     * @param accepted collects transactions which became pending
+     */
+    private void promoteParked(Miner sender, List<Transaction> accepted) {
+        Transaction parked;
+        while ((parked = transactionPool.getParked(sender, ledger.getNextNonce(sender))) != null) {
+            transactionPool.unpark(parked);
+            if (parked.getAmount() > getEstimatedBalance(sender)) {
+                log.debug("Dropping parked transaction, sender is short on funds: {}", parked);
+                return;
+            }
+            log.debug("Parked transaction accepted to pool: {}", parked);
+            addPending(parked);
+            accepted.add(parked);
         }
     }
 
     public void offerBlock(Block block) throws InvalidBlockException, BlockchainException, TransactionException {
-        long stamp = stateLock.writeLock();
+        commitBlock(block, null);
+    }
+
+    /**
+     * Offers block received from another node. Unlike local miners, peers may include transactions this node
+     * hasn't seen yet: their signatures are verified before taking the lock, while under the lock they are checked
+     * not to be confirmed already and to be affordable by their senders. Nonces are checked for every block, relayed
+     * or not. Complexity is adjusted by every node on its own, so the block is accepted if it meets its own complexity,
+     * which is at most one step lower than complexity of the previous block.
+     */
+    void offerRelayedBlock(Block block) throws InvalidBlockException, BlockchainException, TransactionException {
+        Set<Transaction> verifiedTransactions = new HashSet<>();
+        TransactionSet pending = head.get().getPendingTransactions();
+        for (Transaction transaction : block.getTransactions()) {
+            if (transaction.getSender().equals(chainOwner) || pending.contains(transaction)) {
+                continue;
+            }
+            try {
+                SecurityUtil.verifySignature(transaction);
+            } catch (GeneralSecurityException | InvalidSignatureException e) {
+                throw new TransactionException(TextConstants.SIGNATURE_OF_RELAYED_IS_INVALID, e);
+            }
+            verifiedTransactions.add(transaction);
+        }
+        commitBlock(block, verifiedTransactions);
+    }
+
+    /**
+     * @param verifiedTransactions relayed transactions with verified signatures which may be absent in the pool,
+     *                             null for block mined locally
+     */
+    private void commitBlock(Block block, Set<Transaction> verifiedTransactions) throws InvalidBlockException, BlockchainException, TransactionException {
+        Checkpoint checkpoint = null;
+        List<Transaction> promoted = new ArrayList<>();
+        long stamp = lockWrite();
         try {
             if (isClosed) {
                 throw new BlockchainException(TextConstants.BLOCKCHAIN_CLOSED);
             }
 
-            verifyOfferedBlock(block);
+            verifyOfferedBlock(block, verifiedTransactions);
             log.info("Adding new block #{} with hash: {}", block.getId(), block.getHash());
-            chain.add(block);
+            chain.append(block);
+            for (Transaction transaction : block.getTransactions()) {
+                ledger.confirm(transaction, transactionPool.contains(transaction));
+                replayFilter.add(transaction.getId());
+                highestTransactionId = Math.max(highestTransactionId, transaction.getId());
+            }
+            transactionIndex.addBlock(block);
+            lastTransactionId.accumulateAndGet(highestTransactionId, Math::max);       // block may come from a peer
+            if (checkpointStore != null && block.getId() % checkpointStore.getInterval() == 0) {
+                checkpoint = new Checkpoint(block.getId(), block.getHash(), highestTransactionId,
+                        ledger.getConfirmedBalances(), ledger.getConfirmedNonces(), transactionIndex.copy());
+            }
 
+            metrics.recordBlockAdded(TimeUnit.MILLISECONDS.toNanos(clock.millis() - lastBlockTime));
             adjustComplexity();
             transactionPool.removeAll(block.getTransactions());
-            isChallengeDone.set(true);
-            isChallengeDone = new AtomicBoolean(false);
+            block.getTransactions().forEach(blockAssembler::remove);
+            evictConflicting(block);
+            for (Transaction transaction : block.getTransactions()) {
+                promoteParked(transaction.getSender(), promoted);      // relayed block may fill the gap
+            }
+            publishHead(true);
             checkCapacityLimit();
         } finally {
-            stateLock.unlockWrite(stamp);
+            unlockWrite(stamp);
+        }
+        fireHeadChanged(block, promoted);
+        if (checkpoint != null) {
+            writeCheckpoint(checkpoint);
+        }
+    }
+
+    /**
+     * Drops pooled and parked transactions which nonces are taken by other transactions of the committed block,
+     * must be called under the write lock
+     */
+    private void evictConflicting(Block block) {
+        Set<Miner> senders = new HashSet<>();
+        for (Transaction transaction : block.getTransactions()) {
+            Miner sender = transaction.getSender();
+            if (!sender.equals(chainOwner) && senders.add(sender)) {
+                List<Transaction> stale = blockAssembler.removeStale(sender, ledger.getConfirmedNonce(sender));
+                if (!stale.isEmpty()) {
+                    log.debug("Dropping {} pooled transactions of {} conflicting with block #{}", stale.size(), sender.getTitle(), block.getId());
+                    transactionPool.removeAll(stale);
+                    stale.forEach(ledger::release);
+                }
+                List<Transaction> staleParked = transactionPool.dropParkedThrough(sender, ledger.getConfirmedNonce(sender));
+                if (!staleParked.isEmpty()) {
+                    log.debug("Dropping {} parked transactions of {} conflicting with block #{}", staleParked.size(), sender.getTitle(), block.getId());
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the last block, so that competing block of the same height may be offered instead.
+     * Its pooled transactions go back to the pool, the reward transaction is dropped.
+     * Block covered by the pruning checkpoint can't be removed.
+     *
+     * @return removed block
+     */
+    Block rollbackLastBlock() throws BlockchainException {
+        Block lastBlock;
+        long stamp = lockWrite();
+        try {
+            if (isClosed) {
+                throw new BlockchainException(TextConstants.BLOCKCHAIN_CLOSED);
+            }
+            lastBlock = getLastBlock();
+            if (lastBlock.getId() == 0 || lastBlock.getId() <= prunedHeight) {
+                throw new BlockchainException(TextConstants.UNABLE_TO_REMOVE_BLOCK);
+            }
+
+            log.info("Removing block #{} with hash: {}", lastBlock.getId(), lastBlock.getHash());
+            chain.removeLast();
+            transactionIndex.removeBlock(lastBlock);
+            for (Transaction transaction : lastBlock.getTransactions()) {
+                boolean isPooled = !transaction.getSender().equals(chainOwner);
+                ledger.revert(transaction, isPooled);
+                if (isPooled) {
+                    transactionPool.add(transaction);
+                    blockAssembler.add(transaction);
+                }
+            }
+            publishHead(true);
+        } finally {
+            unlockWrite(stamp);
+        }
+        fireHeadChanged(null, List.of());
+        return lastBlock;
+    }
+
+    /**
+     * Writes checkpoint outside of the lock, then evicts bodies of blocks it covers if pruning is enabled
+     */
+    private void writeCheckpoint(Checkpoint checkpoint) {
+        try {
+            checkpointStore.write(checkpoint);
+        } catch (BlockchainException e) {
+            log.error("Unable to write checkpoint at height {}: {}", checkpoint.getHeight(), e.getMessage(), e);
+            return;
+        }
+        if (checkpointStore.isPruningEnabled()) {
+            long stamp = lockWrite();
+            try {
+                pruneThrough(checkpoint.getHeight());
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Evicts bodies of blocks up to the given height. Transactions of evicted bodies leave the index, their IDs stay
+     * in the replay filter, and the highest of them bounds IDs which are treated as confirmed on a filter hit alone.
+     * Stores which don't keep bodies on the heap evict nothing, so their blocks are neither read nor unindexed.
+     */
+    private void pruneThrough(int height) {
+        if (chain.isPruningSupported()) {
+            for (int id = prunedHeight + 1; id <= height; id++) {
+                Block body = chain.get(id);
+                if (!body.isPruned()) {
+                    transactionIndex.pruneBlock(body);
+                    for (Transaction transaction : body.getTransactions()) {
+                        prunedTransactionIdBound = Math.max(prunedTransactionIdBound, transaction.getId());
+                    }
+                }
+            }
+            chain.prune(height);
         }
+        prunedHeight = Math.max(prunedHeight, height);
+    }
+
+    /**
+     * Publishes new version of the chain head, must be called under the write lock.
+     * When the chain is extended current challenge is finished and the next version carries fresh challenge flag.
+     */
+    private void publishHead(boolean isBlockAdded) {
+        Snapshot current = head.get();
+        AtomicBoolean challengeDone = current.challengeDone;
+        if (isBlockAdded) {
+            challengeDone.set(true);
+            challengeDone = new AtomicBoolean(false);
+        }
+        head.set(new Snapshot(current.version + 1, isBlockAdded ? getBlockById(chain.size()) : current.lastBlock,
+                complexity.get(), transactionPool.snapshot(), challengeDone));
+    }
+
+    /**
+     * Notifies listeners about new head version, must be called after the write lock is released
+     *
+     * @param committedBlock       block appended to the chain or null if only pending transactions changed
+     * @param acceptedTransactions transactions accepted to the pool by this change
+     */
+    private void fireHeadChanged(Block committedBlock, List<Transaction> acceptedTransactions) {
+        Snapshot snapshot = head.get();
+        for (BlockchainListener listener : listeners) {
+            try {
+                if (committedBlock != null) {
+                    listener.onBlockCommitted(committedBlock);
+                }
+                for (Transaction transaction : acceptedTransactions) {
+                    listener.onTransactionAccepted(transaction);
+                }
+                listener.onChallengeSuperseded(snapshot);
+            } catch (RuntimeException e) {
+                log.error("Blockchain listener failed: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    public void addListener(BlockchainListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(BlockchainListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns current immutable version of the chain head and pending transactions, no locking or copying involved
+     */
+    public Snapshot getSnapshot() {
+        return head.get();
+    }
+
+    /**
+     * Acquires write lock recording time spent waiting for it
+     */
+    private long lockWrite() {
+        long requestedAt = System.nanoTime();
+        long stamp = stateLock.writeLock();
+        writeLockAcquiredAt = System.nanoTime();
+        metrics.recordLockWait(writeLockAcquiredAt - requestedAt);
+        return stamp;
+    }
+
+    private void unlockWrite(long stamp) {
+        metrics.recordLockHold(System.nanoTime() - writeLockAcquiredAt);
+        stateLock.unlockWrite(stamp);
     }
 
     private Transaction getRewardTransaction(Miner miner) {
@@ -114,48 +590,65 @@ public class Blockchain {
         return new Transaction(getNextTransactionId(), chainOwner, miner, REWARD_AMOUNT);
     }
 
-    public Challenge getChallenge(Miner miner) throws BlockchainException {
-        long stamp = stateLock.tryOptimisticRead();
-
-        Block lastBlock = getLastBlock();
-        AtomicBoolean challengeDoneRef = isChallengeDone;
-        int complexityValue = complexity.get();
-        TreeSet<Transaction> transactions = new TreeSet<>(transactionPool);
+    /**
+     * Returns pending transactions selected for the next block within block limits
+     */
+    public TransactionSet getBlockTemplate() {
+        return getAssembledHead().template;
+    }
 
-        if (isClosed) {
-            throw new BlockchainException(TextConstants.BLOCKCHAIN_CLOSED);
+    /**
+     * Returns current head version with block template assembled. Template is built once per version by the first
+     * reader under the read lock, so writers don't pay for versions nobody mines on.
+     */
+    private Snapshot getAssembledHead() {
+        Snapshot snapshot = head.get();
+        if (snapshot.template != null) {
+            return snapshot;
         }
-
-        if (!stateLock.validate(stamp)) {
-            stamp = stateLock.readLock();
-            try {
-                if (isClosed) {
-                    throw new BlockchainException(TextConstants.BLOCKCHAIN_CLOSED);
+        long stamp = stateLock.readLock();
+        try {
+            snapshot = head.get();
+            synchronized (snapshot) {
+                if (snapshot.template == null) {
+                    snapshot.template = blockAssembler.buildTemplate(ledger::getConfirmedBalance);
                 }
-                lastBlock = getLastBlock();
-                challengeDoneRef = isChallengeDone;
-                complexityValue = complexity.get();
-                transactions = new TreeSet<>(transactionPool);
-            } finally {
-                stateLock.unlockRead(stamp);
             }
+            return snapshot;
+        } finally {
+            stateLock.unlockRead(stamp);
+        }
+    }
+
+    public Challenge getChallenge(Miner miner) throws BlockchainException {
+        Snapshot snapshot = getAssembledHead();
+        if (isClosed) {
+            throw new BlockchainException(TextConstants.BLOCKCHAIN_CLOSED);
         }
 
         Transaction rewardTransaction = getRewardTransaction(miner);
-        transactions.add(rewardTransaction);
+        TransactionSet transactions = snapshot.template.with(rewardTransaction);
+        Transaction lastPending = snapshot.template.last();
+        byte[] merkleRoot = lastPending == null || lastPending.getId() < rewardTransaction.getId()
+                ? snapshot.getMerkleTree().getRootWith(rewardTransaction)
+                : MerkleTree.of(transactions).getRoot();
 
-        return new Challenge(lastBlock.getId() + 1,
-                lastBlock.getHash(),
-                complexityValue,
-                getSeekingString(),
+        return new Challenge(snapshot.lastBlock.getId() + 1,
+                snapshot.lastBlock.getHash(),
+                snapshot.complexity,
+                SEEKING_AL_NUM_CHAR.repeat(snapshot.complexity),
                 transactions,
-                challengeDoneRef);
+                BlockchainUtil.toHex(merkleRoot),
+                snapshot.challengeDone,
+                metrics);
     }
 
     /**
      * Checks offered block for compliance to required complexity and valid ID
+     *
+     * @param verifiedTransactions see {@link #commitBlock}
      */
-    private void verifyOfferedBlock(Block block) throws InvalidBlockException, TransactionException, BlockchainException {
+    private void verifyOfferedBlock(Block block, Set<Transaction> verifiedTransactions) throws InvalidBlockException, TransactionException, BlockchainException {
         log.debug("Verifying offered block ID {} with {} transactions", block.getId(), block.getTransactions().size());
         Block lastBlock = getLastBlock();
 
@@ -165,29 +658,105 @@ public class Blockchain {
             throw new InvalidBlockException(TextConstants.HAS_INVALID_ID);
         }
 
-        String seekingString = getSeekingString();
-        if (!block.getHash().startsWith(seekingString)) {
+        boolean isRelayed = verifiedTransactions != null;
+        String seekingString = isRelayed
+                ? SEEKING_AL_NUM_CHAR.repeat(Math.max(block.getComplexity(), lastBlock.getComplexity() - 1))
+                : getSeekingString();
+        if (!isProofOfWorkSimulated && !block.getHash().startsWith(seekingString)) {
             log.error("Block rejected. Hash ({}) not starts with: {}", block.getHash(), seekingString);
             throw new InvalidBlockException(TextConstants.NOT_MEET_COMPLEXITY);
         }
 
+        int pooledNumber = 0;
+        long pooledBytes = 0;
+        int rewardNumber = 0;
+        Set<Miner> relayedSenders = new HashSet<>();
         for (Transaction transaction : block.getTransactions()) {
-            if (!transactionPool.contains(transaction) && !transaction.getSender().equals(chainOwner)) {
-                log.error("Transaction ID {} is not present in the pool", transaction.getId());
-                throw new TransactionException(TextConstants.NOT_PRESENT_IN_THE_POOL);
+            if (transaction.getSender().equals(chainOwner)) {
+                if (isRelayed && (++rewardNumber > 1 || transaction.getAmount() != REWARD_AMOUNT)) {
+                    throw new InvalidBlockException(TextConstants.INVALID_REWARD);
+                }
+                continue;
+            }
+            if (!transactionPool.contains(transaction)) {
+                if (!isRelayed || !verifiedTransactions.contains(transaction)) {
+                    log.error("Transaction ID {} is not present in the pool", transaction.getId());
+                    throw new TransactionException(TextConstants.NOT_PRESENT_IN_THE_POOL);
+                }
+                if (transactionPool.containsId(transaction.getId()) || isConfirmed(transaction)) {
+                    throw new TransactionException(TextConstants.TRANSACTION_ALREADY_EXIST);
+                }
+                relayedSenders.add(transaction.getSender());
             }
+            pooledNumber++;
+            pooledBytes += BinaryCodec.transactionSize(transaction);
+        }
+        if (pooledNumber > blockAssembler.getMaxTransactions() || pooledBytes > blockAssembler.getMaxBytes()) {
+            log.error("Block rejected. It carries {} pooled transactions of {} bytes", pooledNumber, pooledBytes);
+            throw new InvalidBlockException(TextConstants.EXCEEDS_SIZE_LIMITS);
         }
+        if (!relayedSenders.isEmpty()) {
+            verifyRelayedFunds(block, relayedSenders);
+        }
+        verifyNonces(block);
 
         verifyBlock(block);
     }
 
+    /**
+     * Checks that transactions of every sender carry distinct nonces, which continue the sender's confirmed nonce
+     * without gaps. Locally assembled blocks comply, as the template takes a prefix of each sender's nonce ordered queue.
+     */
+    private void verifyNonces(Block block) throws TransactionException {
+        Map<Miner, NavigableSet<Long>> noncesBySender = new HashMap<>();
+        for (Transaction transaction : block.getTransactions()) {
+            if (!transaction.getSender().equals(chainOwner)
+                    && !noncesBySender.computeIfAbsent(transaction.getSender(), m -> new TreeSet<>()).add(transaction.getNonce())) {
+                throw new TransactionException(TextConstants.INVALID_NONCE);
+            }
+        }
+        for (Map.Entry<Miner, NavigableSet<Long>> entry : noncesBySender.entrySet()) {
+            long confirmedNonce = ledger.getConfirmedNonce(entry.getKey());
+            NavigableSet<Long> nonces = entry.getValue();
+            if (nonces.first() != confirmedNonce + 1 || nonces.last() != confirmedNonce + nonces.size()) {
+                log.error("Block rejected. Nonces of {} don't follow confirmed nonce {}", entry.getKey().getTitle(), confirmedNonce);
+                throw new TransactionException(TextConstants.INVALID_NONCE);
+            }
+        }
+    }
+
+    /**
+     * Checks that senders of transactions unknown to the pool can afford all their transfers in the block
+     * with confirmed balance and what they receive in the same block
+     */
+    private void verifyRelayedFunds(Block block, Set<Miner> senders) throws TransactionException {
+        Map<Miner, Long> deltas = new HashMap<>();
+        for (Transaction transaction : block.getTransactions()) {
+            deltas.merge(transaction.getSender(), -transaction.getAmount(), Long::sum);
+            deltas.merge(transaction.getRecipient(), transaction.getAmount(), Long::sum);
+        }
+        for (Miner sender : senders) {
+            if (ledger.getConfirmedBalance(sender) + deltas.get(sender) < 0) {
+                throw new TransactionException(TextConstants.SENDER_IS_SHORT_ON_FUNDS);
+            }
+        }
+    }
+
     /**
      * Verifies consistency of any block (resided in the chain or just offered to)
      */
     private void verifyBlock(Block block) throws InvalidBlockException, BlockchainException {
         Block previousBlock = getBlockById(block.getId() - 1);
-        String calculatedHash = BlockchainUtil.calculateHash(
-                block.getTransactions().hashCode() + block.getComplexity() + block.getNonce() + previousBlock.getHash());
+        String calculatedRoot = block.isPruned()
+                ? block.getMerkleRoot()
+                : BlockchainUtil.toHex(MerkleTree.of(block.getTransactions()).getRoot());
+        if (!block.getMerkleRoot().equals(calculatedRoot)) {
+            log.error("Block rejected. Merkle root ({}) differs from calculated ({})", block.getMerkleRoot(), calculatedRoot);
+            throw new InvalidBlockException(TextConstants.MERKLE_ROOT_DIFFERS_FROM_CALCULATED);
+        }
+
+        String calculatedHash = BlockchainUtil.calculateBlockHash(
+                block.getMerkleRoot(), block.getComplexity(), block.getNonce(), previousBlock.getHash());
 
         if (!block.getHash().equals(calculatedHash)) {
             log.error("Block rejected. Hash ({}) differs from calculated ({})", block.getHash(), calculatedHash);
@@ -199,37 +768,117 @@ public class Blockchain {
      * Verifies all the blocks in the chain
      */
     public void verifyChain() throws BlockchainException {
-        try {
-            for (Block block : chain) {
-                verifyBlock(block);
+        for (int id = 1; id <= chain.size(); id++) {
+            try {
+                verifyBlock(chain.get(id));
+            } catch (InvalidBlockException e) {
+                throw new BlockchainException(String.format(TextConstants.CHAIN_HAS_INVALID_BLOCK, id, e.getMessage()), e);
             }
-        } catch (InvalidBlockException e) {
-            throw new BlockchainException(e.getMessage(), e);
         }
     }
 
     /**
-     * Calculates Miner's balance based on data inside blockchain together with pending transactions in the pool
+     * Verifies all the blocks in the chain splitting it into ranges verified in parallel.
+     * Once invalid block is found, ranges above it are skipped, but the lowest invalid block is still reported.
+     */
+    public void verifyChain(ForkJoinPool pool) throws BlockchainException {
+        ConcurrentSkipListMap<Integer, Exception> failures = new ConcurrentSkipListMap<>();
+        pool.invoke(new ChainVerificationTask(1, chain.size(), failures));
+
+        if (!failures.isEmpty()) {
+            Map.Entry<Integer, Exception> lowest = failures.firstEntry();
+            throw new BlockchainException(
+                    String.format(TextConstants.CHAIN_HAS_INVALID_BLOCK, lowest.getKey(), lowest.getValue().getMessage()), lowest.getValue());
+        }
+    }
+
+    private class ChainVerificationTask extends RecursiveAction {
+        private static final int SEQUENTIAL_THRESHOLD = 64;
+
+        private final int fromId;
+        private final int toId;
+        private final ConcurrentSkipListMap<Integer, Exception> failures;
+
+        private ChainVerificationTask(int fromId, int toId, ConcurrentSkipListMap<Integer, Exception> failures) {
+            this.fromId = fromId;
+            this.toId = toId;
+            this.failures = failures;
+        }
+
+        @Override
+        protected void compute() {
+            if (toId - fromId < SEQUENTIAL_THRESHOLD) {
+                for (int id = fromId; id <= toId && !hasFailureBelow(id); id++) {
+                    try {
+                        verifyBlock(chain.get(id));
+                    } catch (InvalidBlockException | BlockchainException e) {
+                        failures.put(id, e);
+                        return;
+                    }
+                }
+            } else if (!hasFailureBelow(fromId)) {
+                int middleId = (fromId + toId) >>> 1;
+                invokeAll(new ChainVerificationTask(fromId, middleId, failures),
+                        new ChainVerificationTask(middleId + 1, toId, failures));
+            }
+        }
+
+        private boolean hasFailureBelow(int id) {
+            return !failures.isEmpty() && failures.firstKey() < id;
+        }
+    }
+
+    /**
+     * Returns Miner's balance based on data inside blockchain together with pending transactions in the pool
      */
     public long getEstimatedBalance(Miner miner) {
-        return getConfirmedBalance(miner) + getTransactionsBalance(transactionPool.stream(), miner);
+        return ledger.getEstimatedBalance(miner);
     }
 
     public long getConfirmedBalance(Miner miner) {
-        return getTransactionsBalance(chain.stream()
-                        .flatMap(b -> b.getTransactions().stream()),
-                miner);
+        return ledger.getConfirmedBalance(miner);
+    }
+
+    /**
+     * Reads confirmed balances of many accounts in one pass, all taken at the same head version
+     */
+    public AccountBalances getConfirmedBalances(Collection<Miner> accounts) {
+        return readBalances(accounts, ledger::getConfirmedBalance);
+    }
+
+    /**
+     * Reads estimated balances of many accounts in one pass, all taken at the same head version
+     */
+    public AccountBalances getEstimatedBalances(Collection<Miner> accounts) {
+        return readBalances(accounts, ledger::getEstimatedBalance);
     }
 
-    private long getTransactionsBalance(Stream<Transaction> transactionStream, Miner miner) {
-        return transactionStream.mapToLong(t -> {
-            if (t.getSender().equals(miner)) {
-                return -(t.getAmount());
-            } else if (t.getRecipient().equals(miner)) {
-                return t.getAmount();
+    /**
+     * Ledger lookups are lock-free, so balances are read optimistically and reread under the read lock
+     * only if a block or transaction was committed meanwhile
+     */
+    private AccountBalances readBalances(Collection<Miner> accounts, ToLongFunction<Miner> balanceOf) {
+        long stamp = stateLock.tryOptimisticRead();
+        if (stamp != 0L) {
+            AccountBalances balances = collectBalances(accounts, balanceOf);
+            if (stateLock.validate(stamp)) {
+                return balances;
             }
-            return 0;
-        }).sum();
+        }
+        stamp = stateLock.readLock();
+        try {
+            return collectBalances(accounts, balanceOf);
+        } finally {
+            stateLock.unlockRead(stamp);
+        }
+    }
+
+    private static AccountBalances collectBalances(Collection<Miner> accounts, ToLongFunction<Miner> balanceOf) {
+        AccountBalances balances = new AccountBalances(accounts.size());
+        for (Miner account : accounts) {
+            balances.put(account, balanceOf.applyAsLong(account));
+        }
+        return balances;
     }
 
     public String getSeekingString() {
@@ -237,47 +886,91 @@ public class Blockchain {
     }
 
     public Block getLastBlock() {
-        if (chain.isEmpty()) {
-            return getBlockById(0);
-        }
-        return chain.get(chain.size() - 1);
+        return head.get().lastBlock;
     }
 
     public Block getBlockById(Integer id) {
         if (id.equals(0)) {
             return new Block(0, "0");
         }
-        return chain.get(id - 1);
+        return chain.get(id);
     }
 
-    public Integer getNextTransactionId() {
-        return lastTransactionId.incrementAndGet();
+    /**
+     * Finds confirmed transaction through the transaction index, lookup time doesn't depend on the chain length
+     *
+     * @return transaction or null if it is not stored in the chain
+     */
+    public Transaction getTransactionById(Integer id) {
+        long location = transactionIndex.getLocation(id);
+        if (location < 0) {
+            return null;
+        }
+        return getBlockById(TransactionIndex.getBlockId(location)).getTransactionAt(TransactionIndex.getPosition(location));
     }
 
     /**
-     * Finds highest workload in blocks resides in blockchain
-     *
-     * @return Integer highest workload id or 0 if no workload is present
+     * @return number of confirmed transactions sent or received by the account
      */
-    private Integer getHighestTransactionId() {
-        Block block = getLastBlock();
-        int blockId = block.getId();
+    public int getAccountHistorySize(Miner miner) {
+        return transactionIndex.getHistorySize(miner);
+    }
 
-        while (block.getTransactions().isEmpty() && !block.getId().equals(1)) {
-            block = getBlockById(--blockId);
+    /**
+     * Returns page of confirmed transactions sent or received by the account, most recent first.
+     * Lookup time is proportional to the page size rather than to the chain length.
+     *
+     * @param offset number of most recent transactions to skip
+     * @param limit  maximum number of transactions to return
+     */
+    public List<Transaction> getAccountHistory(Miner miner, int offset, int limit) {
+        long[] locations = transactionIndex.getHistory(miner, offset, limit);
+        List<Transaction> page = new ArrayList<>(locations.length);
+        Block block = null;
+        for (long location : locations) {
+            int blockId = TransactionIndex.getBlockId(location);
+            if (block == null || block.getId() != blockId) {
+                block = getBlockById(blockId);
+            }
+            page.add(block.getTransactionAt(TransactionIndex.getPosition(location)));
         }
+        return page;
+    }
 
-        return block.getTransactions().stream()
-                .mapToInt(Transaction::getId)
-                .max()
-                .orElse(0);
+    /**
+     * @return nonce the next transaction of the account must carry
+     */
+    public long getNextNonce(Miner miner) {
+        return ledger.getNextNonce(miner);
+    }
+
+    /**
+     * Issues unique transaction ID. IDs only identify transactions, replays are prevented by per-account nonces.
+     */
+    public Integer getNextTransactionId() {
+        int index = idPartitionIndex;
+        int count = idPartitionCount;
+        return lastTransactionId.updateAndGet(id -> id + 1 + Math.floorMod(index - id - 1, count));
+    }
+
+    /**
+     * Makes this node issue only transaction IDs equal to {@code index} modulo {@code count}, so nodes exchanging
+     * transactions with each other (see {@link GossipNode}) never issue the same ID
+     */
+    public void setTransactionIdPartition(int index, int count) {
+        this.idPartitionIndex = index;
+        this.idPartitionCount = count;
     }
 
     /**
      * Adjusts complexity value according to time gap between last added and currently offered blocks
      */
     private void adjustComplexity() {
-        long currentTimeGap = System.currentTimeMillis() - lastBlockTime;
+        if (isComplexityFixed) {
+            lastBlockTime = clock.millis();
+            return;
+        }
+        long currentTimeGap = clock.millis() - lastBlockTime;
         log.debug("Time gap after the last added block: {} seconds (complexity: {})", (currentTimeGap / 1000), complexity.get());
 
         if (currentTimeGap < MIN_TIME_GAP && complexity.get() < MAX_COMPLEXITY) {
@@ -286,7 +979,50 @@ public class Blockchain {
             complexity.decrementAndGet();
         }
         log.debug("Complexity adjusted to: {}", complexity.get());
-        lastBlockTime = System.currentTimeMillis();
+        lastBlockTime = clock.millis();
+    }
+
+    /**
+     * Pins complexity of the next blocks, so it's no longer adjusted to the time gap between blocks
+     */
+    public void setFixedComplexity(int fixedComplexity) {
+        long stamp = lockWrite();
+        try {
+            complexity.set(fixedComplexity);
+            isComplexityFixed = true;
+            publishHead(false);
+        } finally {
+            unlockWrite(stamp);
+        }
+        fireHeadChanged(null, List.of());
+    }
+
+    /**
+     * Makes the chain accept blocks which hash doesn't meet the complexity. Hash itself is still verified.
+     * Used by {@link Simulation}, which models time of solving the challenge instead of spending it on hashing.
+     */
+    void setProofOfWorkSimulated(boolean isProofOfWorkSimulated) {
+        this.isProofOfWorkSimulated = isProofOfWorkSimulated;
+    }
+
+    /**
+     * Closes the chain before it reaches its capacity: current challenge is finished, miner loops and clients stop
+     */
+    public void close() {
+        long stamp = lockWrite();
+        try {
+            if (isClosed) {
+                return;
+            }
+            isClosed = true;
+            publishHead(true);      // finishes current challenge as if a block was added
+        } finally {
+            unlockWrite(stamp);
+        }
+        fireHeadChanged(null, List.of());
+        if (onCloseEventHandler != null) {
+            onCloseEventHandler.accept(this);
+        }
     }
 
     public void checkCapacityLimit() {
@@ -297,36 +1033,119 @@ public class Blockchain {
         }
     }
 
+    public BlockchainMetrics getMetrics() {
+        return metrics;
+    }
+
     public boolean isClosed() {
         return isClosed;
     }
 
     public void setOnCloseEventHandler(Consumer<Blockchain> onCloseEventHandler) {
         this.onCloseEventHandler = onCloseEventHandler;
+        if (isClosed) {
+            onCloseEventHandler.accept(this);
+        }
+    }
+
+    /**
+     * Streams blocks of the given inclusive range to the writer one by one, range is clipped to the chain
+     *
+     * @return number of exported blocks
+     */
+    public int exportBlocks(int fromId, int toId, ChainWriter writer) throws BlockchainException {
+        int lastId = Math.min(toId, head.get().lastBlock.getId());
+        int exported = 0;
+        for (int id = Math.max(1, fromId); id <= lastId; id++) {
+            writer.write(chain.get(id));
+            exported++;
+        }
+        return exported;
     }
 
+    /**
+     * Joins the whole chain into a single string, use {@link #exportBlocks} for long chains
+     */
     @Override
     public String toString() {
-        return chain.stream()
+        return IntStream.rangeClosed(1, head.get().lastBlock.getId())
+                .mapToObj(chain::get)
                 .map(Block::toString)
                 .collect(Collectors.joining("\n\n"));
     }
 
+    /**
+     * Immutable version of the chain head together with transactions pending at that moment.
+     * Every change publishes new version which shares pending transactions structure with the previous one.
+     */
+    public static class Snapshot {
+        private final long version;
+        private final Block lastBlock;
+        private final int complexity;
+        private final TransactionSet pendingTransactions;
+        private final AtomicBoolean challengeDone;
+        private volatile TransactionSet template;
+        private volatile MerkleTree merkleTree;
+
+        private Snapshot(long version, Block lastBlock, int complexity, TransactionSet pendingTransactions, AtomicBoolean challengeDone) {
+            this.version = version;
+            this.lastBlock = lastBlock;
+            this.complexity = complexity;
+            this.pendingTransactions = pendingTransactions;
+            this.challengeDone = challengeDone;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public Block getLastBlock() {
+            return lastBlock;
+        }
+
+        public int getComplexity() {
+            return complexity;
+        }
+
+        public TransactionSet getPendingTransactions() {
+            return pendingTransactions;
+        }
+
+        /**
+         * Merkle tree of the template is built by the first miner asking for challenge of this version,
+         * others only extend its root with own reward transaction
+         */
+        private MerkleTree getMerkleTree() throws BlockchainException {
+            MerkleTree tree = merkleTree;
+            if (tree == null) {
+                tree = MerkleTree.of(template);
+                merkleTree = tree;
+            }
+            return tree;
+        }
+    }
+
     public static class Challenge {
         private final Integer nextBlockId;
         private final String lastHash;
         private final int complexity;
         private final String seekingString;
         private final Set<Transaction> transactions;
+        private final String merkleRoot;
         private final AtomicBoolean isDone;
+        private final BlockchainMetrics metrics;
 
-        private Challenge(Integer nextBlockId, String lastHash, int complexity, String seekingString, Set<Transaction> transactions, AtomicBoolean isChallengeDone) {
+        private Challenge(Integer nextBlockId, String lastHash, int complexity, String seekingString, Set<Transaction> transactions, String merkleRoot,
+                          AtomicBoolean isChallengeDone,
+                          BlockchainMetrics metrics) {
             this.nextBlockId = nextBlockId;
             this.lastHash = lastHash;
             this.complexity = complexity;
             this.seekingString = seekingString;
             this.transactions = transactions;
+            this.merkleRoot = merkleRoot;
             this.isDone = isChallengeDone;
+            this.metrics = metrics;
         }
 
         public Integer getNextBlockId() {
@@ -349,8 +1168,16 @@ public class Blockchain {
             return transactions;
         }
 
+        public String getMerkleRoot() {
+            return merkleRoot;
+        }
+
         public boolean isDone() {
             return isDone.get();
         }
+
+        BlockchainMetrics getMetrics() {
+            return metrics;
+        }
     }
 }
@@ -0,0 +1,24 @@
+package casa.squawk7777;
+
+/**
+ * Receives blockchain state changes. Notifications are delivered synchronously by the thread which made the change
+ * after the state lock is released, so listeners must be quick and must not block; a listener which has slow work
+ * to do should hand it off on its own.
+ */
+public interface BlockchainListener {
+    /**
+     * Called when block is appended to the chain, before {@link #onChallengeSuperseded} for the same change
+     */
+    default void onBlockCommitted(Block block) {}
+
+    /**
+     * Called for every transaction accepted to the pool, before {@link #onChallengeSuperseded} for the same change
+     */
+    default void onTransactionAccepted(Transaction transaction) {}
+
+    /**
+     * Called when new version of the chain head is published (block committed or pending transactions changed),
+     * so challenges built from the previous versions are outdated
+     */
+    default void onChallengeSuperseded(Blockchain.Snapshot snapshot) {}
+}
@@ -0,0 +1,275 @@
+package casa.squawk7777;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.security.GeneralSecurityException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Runtime instrumentation of the blockchain. Counters are striped ({@link LongAdder}) and histograms lock-free,
+ * so recording an event costs a few nanoseconds. Exposed through JMX and {@link MetricsReporter} snapshots.
+ */
+public class BlockchainMetrics implements BlockchainMetricsMXBean {
+    private static final Logger log = LoggerFactory.getLogger(BlockchainMetrics.class);
+    private static final String OBJECT_NAME = "casa.squawk7777:type=BlockchainMetrics";
+
+    private final LongAdder hashesComputed;
+    private final Map<String, LongAdder> minerHashes;
+    private final LongAdder challengesWon;
+    private final LongAdder challengesExpired;
+    private final LongAdder transactionsAccepted;
+    private final Map<String, LongAdder> transactionsRejected;
+    private final LongAdder replayChecksSkipped;
+    private final LongAdder replayFilterFalsePositives;
+    private final LongAdder blocksAdded;
+    private final LatencyHistogram lockWaitTime;
+    private final LatencyHistogram lockHoldTime;
+    private final LatencyHistogram blockInterval;
+    private final LatencyHistogram admissionLatency;
+
+    private volatile IntSupplier mempoolDepth;
+    private volatile Snapshot previousSnapshot;
+    private volatile Snapshot lastSnapshot;
+
+    public BlockchainMetrics() {
+        this.hashesComputed = new LongAdder();
+        this.minerHashes = new ConcurrentHashMap<>();
+        this.challengesWon = new LongAdder();
+        this.challengesExpired = new LongAdder();
+        this.transactionsAccepted = new LongAdder();
+        this.transactionsRejected = new ConcurrentHashMap<>();
+        this.replayChecksSkipped = new LongAdder();
+        this.replayFilterFalsePositives = new LongAdder();
+        this.blocksAdded = new LongAdder();
+        this.lockWaitTime = new LatencyHistogram();
+        this.lockHoldTime = new LatencyHistogram();
+        this.blockInterval = new LatencyHistogram();
+        this.admissionLatency = new LatencyHistogram();
+        this.mempoolDepth = () -> 0;
+        this.lastSnapshot = new Snapshot(System.nanoTime(), 0, Collections.emptyMap());
+        this.previousSnapshot = lastSnapshot;
+    }
+
+    /**
+     * Registers metrics in the platform MBean server
+     */
+    public void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            log.warn("Unable to register blockchain metrics MBean: {}", e.getMessage());
+        }
+    }
+
+    public void recordHashes(String miner, long hashes) {
+        hashesComputed.add(hashes);
+        minerHashes.computeIfAbsent(miner, m -> new LongAdder()).add(hashes);
+    }
+
+    public void recordChallengeWon() {
+        challengesWon.increment();
+    }
+
+    public void recordChallengeExpired() {
+        challengesExpired.increment();
+    }
+
+    public void recordAccepted(long admissionNanos) {
+        transactionsAccepted.increment();
+        admissionLatency.record(admissionNanos);
+    }
+
+    /**
+     * Counts rejected transaction by reason: message of the exception or its type for security provider errors
+     */
+    public void recordRejected(Exception rejection) {
+        String reason = rejection instanceof GeneralSecurityException || rejection.getMessage() == null
+                ? rejection.getClass().getSimpleName()
+                : rejection.getMessage();
+        transactionsRejected.computeIfAbsent(reason, r -> new LongAdder()).increment();
+    }
+
+    /**
+     * Counts replay check answered by the filter alone
+     */
+    public void recordReplayCheckSkipped() {
+        replayChecksSkipped.increment();
+    }
+
+    /**
+     * Counts probable hit of the replay filter not confirmed by the transaction index
+     */
+    public void recordReplayFilterFalsePositive() {
+        replayFilterFalsePositives.increment();
+    }
+
+    public void recordBlockAdded(long intervalNanos) {
+        blocksAdded.increment();
+        blockInterval.record(intervalNanos);
+    }
+
+    public void recordLockWait(long nanos) {
+        lockWaitTime.record(nanos);
+    }
+
+    public void recordLockHold(long nanos) {
+        lockHoldTime.record(nanos);
+    }
+
+    void setMempoolDepth(IntSupplier mempoolDepth) {
+        this.mempoolDepth = mempoolDepth;
+    }
+
+    /**
+     * Takes snapshot of hash counters, rates are calculated between the two latest snapshots
+     */
+    public synchronized Snapshot snapshot() {
+        Map<String, Long> hashes = new HashMap<>();
+        minerHashes.forEach((miner, counter) -> hashes.put(miner, counter.sum()));
+        previousSnapshot = lastSnapshot;
+        lastSnapshot = new Snapshot(System.nanoTime(), hashesComputed.sum(), hashes);
+        return lastSnapshot;
+    }
+
+    @Override
+    public long getHashesComputed() {
+        return hashesComputed.sum();
+    }
+
+    @Override
+    public double getHashRate() {
+        Snapshot previous = previousSnapshot;
+        Snapshot last = lastSnapshot;
+        return rate(last.hashes - previous.hashes, last.nanoTime - previous.nanoTime);
+    }
+
+    @Override
+    public Map<String, Double> getMinerHashRates() {
+        Snapshot previous = previousSnapshot;
+        Snapshot last = lastSnapshot;
+        Map<String, Double> rates = new HashMap<>();
+        last.minerHashes.forEach((miner, hashes) ->
+                rates.put(miner, rate(hashes - previous.minerHashes.getOrDefault(miner, 0L), last.nanoTime - previous.nanoTime)));
+        return rates;
+    }
+
+    @Override
+    public long getChallengesWon() {
+        return challengesWon.sum();
+    }
+
+    @Override
+    public long getChallengesExpired() {
+        return challengesExpired.sum();
+    }
+
+    @Override
+    public long getTransactionsAccepted() {
+        return transactionsAccepted.sum();
+    }
+
+    @Override
+    public Map<String, Long> getTransactionsRejected() {
+        Map<String, Long> rejected = new HashMap<>();
+        transactionsRejected.forEach((reason, counter) -> rejected.put(reason, counter.sum()));
+        return rejected;
+    }
+
+    @Override
+    public long getReplayChecksSkipped() {
+        return replayChecksSkipped.sum();
+    }
+
+    @Override
+    public long getReplayFilterFalsePositives() {
+        return replayFilterFalsePositives.sum();
+    }
+
+    @Override
+    public int getMempoolDepth() {
+        return mempoolDepth.getAsInt();
+    }
+
+    @Override
+    public long getBlocksAdded() {
+        return blocksAdded.sum();
+    }
+
+    @Override
+    public long getLockWaitP99() {
+        return lockWaitTime.getPercentile(99);
+    }
+
+    @Override
+    public long getLockHoldP99() {
+        return lockHoldTime.getPercentile(99);
+    }
+
+    @Override
+    public long getBlockIntervalP50() {
+        return blockInterval.getPercentile(50);
+    }
+
+    @Override
+    public long getAdmissionLatencyP50() {
+        return admissionLatency.getPercentile(50);
+    }
+
+    @Override
+    public long getAdmissionLatencyP99() {
+        return admissionLatency.getPercentile(99);
+    }
+
+    public LatencyHistogram getLockWaitTime() {
+        return lockWaitTime;
+    }
+
+    public LatencyHistogram getLockHoldTime() {
+        return lockHoldTime;
+    }
+
+    public LatencyHistogram getBlockInterval() {
+        return blockInterval;
+    }
+
+    public LatencyHistogram getAdmissionLatency() {
+        return admissionLatency;
+    }
+
+    private static double rate(long delta, long nanos) {
+        return nanos <= 0 ? 0 : delta * 1_000_000_000d / nanos;
+    }
+
+    public static class Snapshot {
+        private final long nanoTime;
+        private final long hashes;
+        private final Map<String, Long> minerHashes;
+
+        private Snapshot(long nanoTime, long hashes, Map<String, Long> minerHashes) {
+            this.nanoTime = nanoTime;
+            this.hashes = hashes;
+            this.minerHashes = minerHashes;
+        }
+
+        public long getNanoTime() {
+            return nanoTime;
+        }
+
+        public long getHashes() {
+            return hashes;
+        }
+
+        public Map<String, Long> getMinerHashes() {
+            return minerHashes;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package casa.squawk7777;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link BlockchainMetrics}. Durations are in nanoseconds, rates are per second
+ * and computed between the last two snapshots.
+ */
+public interface BlockchainMetricsMXBean {
+    long getHashesComputed();
+
+    double getHashRate();
+
+    Map<String, Double> getMinerHashRates();
+
+    long getChallengesWon();
+
+    long getChallengesExpired();
+
+    long getTransactionsAccepted();
+
+    Map<String, Long> getTransactionsRejected();
+
+    long getReplayChecksSkipped();
+
+    long getReplayFilterFalsePositives();
+
+    int getMempoolDepth();
+
+    long getBlocksAdded();
+
+    long getLockWaitP99();
+
+    long getLockHoldP99();
+
+    long getBlockIntervalP50();
+
+    long getAdmissionLatencyP50();
+
+    long getAdmissionLatencyP99();
+}
@@ -8,50 +8,178 @@ import org.slf4j.LoggerFactory;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class BlockchainUtil {
     private static final Logger log = LoggerFactory.getLogger(BlockchainUtil.class);
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final ThreadLocal<MessageDigest> DIGESTS = new ThreadLocal<>();
+    private static final long HASH_REPORT_MASK = (1L << 16) - 1;     // hashes are reported to metrics in chunks
 
     private BlockchainUtil() {}
 
     public static Block generateBlock(Blockchain.Challenge challenge, String miner) throws BlockchainException, ChallengeExpiredException {
+        return generateBlock(challenge, miner, ThreadLocalRandom.current().nextLong(0, Long.MAX_VALUE));
+    }
+
+    /**
+     * Seeks block hash trying nonces one by one starting with the given one, so that search started from
+     * a seeded random nonce finds the same solution every time
+     */
+    public static Block generateBlock(Blockchain.Challenge challenge, String miner, long startNonce) throws BlockchainException, ChallengeExpiredException {
         log.debug("Seeking hash for block with {} transactions which starts with: {}",
                 challenge.getTransactions().size(), challenge.getSeekingString());
 
-        String currentHash = "";
-        long salt = 0L;
+        MiningEngine.Search search = MiningEngine.forChallenge(challenge).newSearch();
+        long nonce = startNonce;
+        long attempts = 1;
 
-        while (!currentHash.startsWith(challenge.getSeekingString())) {
-            if (challenge.isDone()) {
-                throw new ChallengeExpiredException(TextConstants.CHALLENGE_FINISHED);
+        try {
+            while (!search.tryNonce(nonce)) {
+                if (challenge.isDone()) {
+                    throw new ChallengeExpiredException(TextConstants.CHALLENGE_FINISHED);
+                }
+                nonce++;
+                if ((++attempts & HASH_REPORT_MASK) == 0) {
+                    challenge.getMetrics().recordHashes(miner, HASH_REPORT_MASK + 1);
+                }
             }
-            salt = ThreadLocalRandom.current().nextLong(0, Long.MAX_VALUE);
-            currentHash = calculateHash(
-                    challenge.getTransactions().hashCode() + challenge.getComplexity() + salt + challenge.getLastHash());
+        } finally {
+            challenge.getMetrics().recordHashes(miner, attempts & HASH_REPORT_MASK);
         }
-        log.debug("Found appropriate hash\n({}) with salt: {}", currentHash, salt);
+        String currentHash = search.getHashString();
+        log.debug("Found appropriate hash\n({}) with salt: {}", currentHash, nonce);
 
-        return new Block(challenge.getNextBlockId(), challenge.getComplexity(), salt, currentHash, miner, challenge.getTransactions());
+        return new Block(challenge.getNextBlockId(), challenge.getComplexity(), nonce, currentHash, challenge.getMerkleRoot(),
+                miner, challenge.getTransactions());
     }
 
-    public static String calculateHash(String input) throws BlockchainException {
+    /**
+     * Seeks block hash in parallel: nonce space is split into disjoint ranges, one per worker. Workers stop as soon as
+     * any of them finds a solution or the challenge is finished by someone else.
+     * Worker pool must be dedicated to mining, otherwise calling thread may wait for its own queued workers.
+     */
+    public static Block generateBlock(Blockchain.Challenge challenge, String miner, Executor workerPool, int workers) throws BlockchainException, ChallengeExpiredException {
+        log.debug("Seeking hash for block with {} transactions which starts with: {} ({} workers)",
+                challenge.getTransactions().size(), challenge.getSeekingString(), workers);
+
+        MiningEngine engine = MiningEngine.forChallenge(challenge);
+        CompletableFuture<Block> result = new CompletableFuture<>();
+        AtomicInteger activeWorkers = new AtomicInteger(workers);
+        long rangeSize = Long.MAX_VALUE / workers;
+
+        for (int i = 0; i < workers && !result.isDone(); i++) {
+            long from = i * rangeSize;
+            long to = (i == workers - 1) ? Long.MAX_VALUE : from + rangeSize;
+            try {
+                workerPool.execute(() -> searchNonceRange(engine, challenge, miner, from, to, result, activeWorkers));
+            } catch (RejectedExecutionException e) {
+                result.completeExceptionally(new BlockchainException(TextConstants.MINING_POOL_UNAVAILABLE, e));
+            }
+        }
+
+        try {
+            Block block = result.get();
+            log.debug("Found appropriate hash\n({}) with salt: {}", block.getHash(), block.getNonce());
+            return block;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.cancel(false);
+            throw new ChallengeExpiredException(TextConstants.CHALLENGE_FINISHED, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ChallengeExpiredException) {
+                throw (ChallengeExpiredException) e.getCause();
+            }
+            throw new BlockchainException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static void searchNonceRange(MiningEngine engine, Blockchain.Challenge challenge, String miner, long from, long to,
+                                         CompletableFuture<Block> result, AtomicInteger activeWorkers) {
+        long attempts = 0;
         try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(input.getBytes(StandardCharsets.UTF_8));
-            StringBuilder hexString = new StringBuilder();
-
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b );
-                if (hex.length() == 1) {
-                    hexString.append('0');
+            MiningEngine.Search search = engine.newSearch();
+            for (long nonce = from; nonce < to && !result.isDone() && !challenge.isDone(); nonce++) {
+                if ((++attempts & HASH_REPORT_MASK) == 0) {
+                    challenge.getMetrics().recordHashes(miner, HASH_REPORT_MASK + 1);
+                }
+                if (search.tryNonce(nonce)) {
+                    result.complete(new Block(challenge.getNextBlockId(), challenge.getComplexity(), nonce,
+                            search.getHashString(), challenge.getMerkleRoot(), miner, challenge.getTransactions()));
+                    return;
                 }
-                hexString.append(hex);
             }
-            return hexString.toString();
+        } catch (BlockchainException e) {
+            result.completeExceptionally(e);
+        } finally {
+            challenge.getMetrics().recordHashes(miner, attempts & HASH_REPORT_MASK);
+            if (activeWorkers.decrementAndGet() == 0) {
+                result.completeExceptionally(new ChallengeExpiredException(challenge.isDone()
+                        ? TextConstants.CHALLENGE_FINISHED
+                        : TextConstants.NONCE_SPACE_EXHAUSTED));
+            }
+        }
+    }
+
+    /**
+     * Calculates proof-of-work hash of the block header, exactly as it is done during mining
+     */
+    public static String calculateBlockHash(String merkleRoot, int complexity, long nonce, String lastHash) throws BlockchainException {
+        MiningEngine.Search search = new MiningEngine(fromHex(merkleRoot), complexity, lastHash).newSearch();
+        search.tryNonce(nonce);
+        return search.getHashString();
+    }
+
+    public static String calculateHash(String input) throws BlockchainException {
+        return toHex(getDigest().digest(input.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Returns SHA-256 digest reused by the calling thread
+     */
+    static MessageDigest getDigest() throws BlockchainException {
+        MessageDigest digest = DIGESTS.get();
+        if (digest == null) {
+            try {
+                digest = MessageDigest.getInstance(HASH_ALGORITHM);
+            } catch (NoSuchAlgorithmException e) {
+                throw new BlockchainException(TextConstants.UNABLE_TO_CALCULATE_HASH, e);
+            }
+            DIGESTS.set(digest);
+        }
+        digest.reset();
+        return digest;
+    }
+
+    public static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(bytes[i] >>> 4) & 0x0F];
+            hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0x0F];
         }
-        catch(NoSuchAlgorithmException e) {
-            throw new BlockchainException(TextConstants.UNABLE_TO_CALCULATE_HASH, e);
+        return new String(hex);
+    }
+
+    /**
+     * Parses hex string into bytes, odd-length input is treated as left-padded with zero
+     */
+    public static byte[] fromHex(String hex) {
+        int offset = hex.length() & 1;
+        byte[] bytes = new byte[(hex.length() + offset) / 2];
+        for (int i = 0; i < hex.length(); i++) {
+            int position = i + offset;
+            int nibble = Character.digit(hex.charAt(i), 16);
+            if (nibble < 0) {
+                throw new IllegalArgumentException("Invalid hex character: " + hex.charAt(i));
+            }
+            bytes[position / 2] |= (position & 1) == 0 ? nibble << 4 : nibble;
         }
+        return bytes;
     }
 }
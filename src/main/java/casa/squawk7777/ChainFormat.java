@@ -0,0 +1,24 @@
+package casa.squawk7777;
+
+import java.util.Locale;
+
+/**
+ * Format of chain export written by {@link ChainWriter} and read back by {@link ChainReader}
+ */
+public enum ChainFormat {
+    /**
+     * One JSON object per block and line, readable by generic tools
+     */
+    JSON_LINES,
+    /**
+     * Checksummed records of the canonical binary encoding (see {@link BinaryCodec}) after the format header
+     */
+    BINARY;
+
+    /**
+     * @return format by its case-insensitive name or {@link #JSON_LINES} if name is not given
+     */
+    public static ChainFormat of(String name) {
+        return name == null ? JSON_LINES : valueOf(name.toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,404 @@
+package casa.squawk7777;
+
+import casa.squawk7777.exceptions.BlockchainException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * Reads blocks written by {@link ChainWriter} one by one, so import takes memory of a single block regardless
+ * of the chain length. Accounts are restored through a cache, public key of every account is decoded only once.
+ */
+public class ChainReader implements AutoCloseable {
+    private final ReadableByteChannel channel;
+    private final ChainFormat format;
+    private final BinaryCodec codec;
+    private final Map<String, Miner> accounts;
+    private final BufferedReader lines;
+    private final ByteBuffer recordHeader;
+    private ByteBuffer buffer;
+    private boolean isHeaderRead;
+
+    public ChainReader(ReadableByteChannel channel, ChainFormat format) {
+        this.channel = channel;
+        this.format = format;
+        this.codec = new BinaryCodec();
+        this.accounts = new HashMap<>();
+        this.lines = format == ChainFormat.JSON_LINES
+                ? new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), -1))
+                : null;
+        this.recordHeader = ByteBuffer.allocate(ChainWriter.RECORD_HEADER_LENGTH - Byte.BYTES);
+        this.buffer = ByteBuffer.allocate(0);
+    }
+
+    /**
+     * Creates reader on top of the stream, closing the reader closes the stream
+     */
+    public ChainReader(InputStream in, ChainFormat format) {
+        this(Channels.newChannel(in), format);
+    }
+
+    /**
+     * @return next block or null if the end of export is reached
+     */
+    public Block read() throws BlockchainException {
+        try {
+            return format == ChainFormat.BINARY ? readRecord() : readLine();
+        } catch (IOException e) {
+            throw new BlockchainException(TextConstants.UNABLE_TO_IMPORT_CHAIN, e);
+        } catch (GeneralSecurityException | RuntimeException e) {
+            throw new BlockchainException(TextConstants.CHAIN_EXPORT_CORRUPTED, e);
+        }
+    }
+
+    /**
+     * Appends all the remaining blocks to the store, blocks are loaded as trusted, so the chain built on top of
+     * the store should be verified
+     *
+     * @return number of imported blocks
+     */
+    public int readInto(BlockStore store) throws BlockchainException {
+        int imported = 0;
+        Block block;
+        while ((block = read()) != null) {
+            store.append(block);
+            imported++;
+        }
+        return imported;
+    }
+
+    private Block readRecord() throws IOException, GeneralSecurityException, BlockchainException {
+        if (!isHeaderRead) {
+            ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES);
+            if (!readFully(magic) || magic.getInt(0) != ChainWriter.BINARY_MAGIC) {
+                throw new BlockchainException(TextConstants.CHAIN_EXPORT_CORRUPTED);
+            }
+            isHeaderRead = true;
+        }
+        recordHeader.clear();
+        if (!readFully(recordHeader)) {
+            return null;
+        }
+        int length = recordHeader.getInt(0);
+        if (length <= 0) {
+            throw new BlockchainException(TextConstants.CHAIN_EXPORT_CORRUPTED);
+        }
+        if (buffer.capacity() < length) {
+            buffer = ByteBuffer.allocate(Math.max(length, buffer.capacity() * 2));
+        }
+        buffer.clear().limit(length);
+        if (!readFully(buffer)) {
+            throw new BufferUnderflowException();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, length);
+        if ((int) crc.getValue() != recordHeader.getInt(Integer.BYTES)) {
+            throw new BlockchainException(TextConstants.CHAIN_EXPORT_CORRUPTED);
+        }
+        buffer.flip();
+        boolean isPruned = buffer.get() != 0;
+        Block block = codec.readBlock(buffer);
+        return isPruned ? block.toHeader() : block;
+    }
+
+    private Block readLine() throws IOException, GeneralSecurityException {
+        String line;
+        do {
+            line = lines.readLine();
+            if (line == null) {
+                return null;
+            }
+        } while (line.isBlank());
+
+        Map<String, Object> json = asObject(new JsonParser(line).parse());
+        Set<Transaction> transactions = new TreeSet<>();
+        for (Object transaction : (List<?>) json.get("transactions")) {
+            transactions.add(toTransaction(asObject(transaction)));
+        }
+        Block block = new Block(asInt(json.get("id")), asInt(json.get("complexity")), asLong(json.get("nonce")),
+                (String) json.get("hash"), (String) json.get("merkleRoot"), (String) json.get("miner"), transactions);
+        return Boolean.TRUE.equals(json.get("pruned")) ? block.toHeader() : block;
+    }
+
+    private Transaction toTransaction(Map<String, Object> json) throws GeneralSecurityException {
+        Miner sender = toAccount(asObject(json.get("sender")));
+        Transaction transaction = new Transaction(asInt(json.get("id")), sender, toAccount(asObject(json.get("recipient"))),
+                asLong(json.get("amount")), asLong(json.get("nonce")));
+        Object signature = json.get("signature");
+        if (signature != null) {
+            PublicKey signerKey = json.containsKey("signerKey") ? toKey(json.get("signerKey")) : sender.getPublicKey();
+            transaction.sign(Base64.getDecoder().decode((String) signature), signerKey);
+        }
+        return transaction;
+    }
+
+    /**
+     * Restores account, decoding its public key only the first time the address is met
+     */
+    private Miner toAccount(Map<String, Object> json) throws GeneralSecurityException {
+        String address = (String) json.get("address");
+        Miner known = accounts.get(address);
+        if (known != null) {
+            return known;
+        }
+        Miner account = new Miner(null, (String) json.get("title"), toKey(json.get("key")));
+        if (!Arrays.equals(account.getAddress(), BlockchainUtil.fromHex(address))) {
+            throw new IllegalArgumentException(TextConstants.CHAIN_EXPORT_CORRUPTED);
+        }
+        accounts.put(address, account);
+        return account;
+    }
+
+    private static PublicKey toKey(Object value) throws GeneralSecurityException {
+        if (value == null) {
+            return null;
+        }
+        Map<String, Object> json = asObject(value);
+        return SignatureScheme.of((String) json.get("scheme")).decodePublicKey(Base64.getDecoder().decode((String) json.get("encoded")));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asObject(Object value) {
+        if (!(value instanceof Map)) {
+            throw new IllegalArgumentException(TextConstants.CHAIN_EXPORT_CORRUPTED);
+        }
+        return (Map<String, Object>) value;
+    }
+
+    private static long asLong(Object value) {
+        if (!(value instanceof Long)) {
+            throw new IllegalArgumentException(TextConstants.CHAIN_EXPORT_CORRUPTED);
+        }
+        return (Long) value;
+    }
+
+    private static int asInt(Object value) {
+        return Math.toIntExact(asLong(value));
+    }
+
+    /**
+     * Fills the buffer from the channel
+     *
+     * @return false if the channel ended before the first byte
+     * @throws BufferUnderflowException if the channel ended in the middle
+     */
+    private boolean readFully(ByteBuffer target) throws IOException {
+        while (target.hasRemaining()) {
+            if (channel.read(target) < 0) {
+                if (target.position() == 0) {
+                    return false;
+                }
+                throw new BufferUnderflowException();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws BlockchainException {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new BlockchainException(TextConstants.UNABLE_TO_IMPORT_CHAIN, e);
+        }
+    }
+
+    /**
+     * Minimal parser of a single JSON value: objects become maps, arrays become lists, numbers must be integral
+     * and become longs. That is all the export format needs.
+     */
+    private static class JsonParser {
+        private final String text;
+        private int position;
+
+        private JsonParser(String text) {
+            this.text = text;
+        }
+
+        private Object parse() {
+            Object value = parseValue();
+            skipWhitespace();
+            if (position != text.length()) {
+                throw error();
+            }
+            return value;
+        }
+
+        private Object parseValue() {
+            skipWhitespace();
+            if (position >= text.length()) {
+                throw error();
+            }
+            char c = text.charAt(position);
+            switch (c) {
+                case '{':
+                    return parseObject();
+                case '[':
+                    return parseArray();
+                case '"':
+                    return parseString();
+                case 't':
+                    return parseLiteral("true", Boolean.TRUE);
+                case 'f':
+                    return parseLiteral("false", Boolean.FALSE);
+                case 'n':
+                    return parseLiteral("null", null);
+                default:
+                    return parseNumber();
+            }
+        }
+
+        private Map<String, Object> parseObject() {
+            Map<String, Object> object = new LinkedHashMap<>();
+            position++;
+            skipWhitespace();
+            if (peek() == '}') {
+                position++;
+                return object;
+            }
+            do {
+                skipWhitespace();
+                String key = parseString();
+                skipWhitespace();
+                expect(':');
+                object.put(key, parseValue());
+                skipWhitespace();
+            } while (tryConsume(','));
+            expect('}');
+            return object;
+        }
+
+        private List<Object> parseArray() {
+            List<Object> array = new ArrayList<>();
+            position++;
+            skipWhitespace();
+            if (peek() == ']') {
+                position++;
+                return array;
+            }
+            do {
+                array.add(parseValue());
+                skipWhitespace();
+            } while (tryConsume(','));
+            expect(']');
+            return array;
+        }
+
+        private String parseString() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                char c = next();
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                char escaped = next();
+                switch (escaped) {
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'u':
+                        if (position + 4 > text.length()) {
+                            throw error();
+                        }
+                        value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        position += 4;
+                        break;
+                    default:
+                        value.append(escaped);
+                }
+            }
+        }
+
+        private Long parseNumber() {
+            int start = position;
+            if (peek() == '-') {
+                position++;
+            }
+            while (position < text.length() && Character.isDigit(text.charAt(position))) {
+                position++;
+            }
+            if (position == start) {
+                throw error();
+            }
+            return Long.parseLong(text.substring(start, position));
+        }
+
+        private Object parseLiteral(String literal, Object value) {
+            if (!text.startsWith(literal, position)) {
+                throw error();
+            }
+            position += literal.length();
+            return value;
+        }
+
+        private void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        private char peek() {
+            return position < text.length() ? text.charAt(position) : 0;
+        }
+
+        private char next() {
+            if (position >= text.length()) {
+                throw error();
+            }
+            return text.charAt(position++);
+        }
+
+        private boolean tryConsume(char c) {
+            if (peek() == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            if (next() != c) {
+                throw error();
+            }
+        }
+
+        private IllegalArgumentException error() {
+            return new IllegalArgumentException(TextConstants.CHAIN_EXPORT_CORRUPTED + " at character " + position);
+        }
+    }
+}
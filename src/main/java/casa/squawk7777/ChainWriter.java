@@ -0,0 +1,202 @@
+package casa.squawk7777;
+
+import casa.squawk7777.exceptions.BlockchainException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.util.Base64;
+import java.util.zip.CRC32;
+
+/**
+ * Streams blocks to a channel one by one: every block is encoded into a reused buffer and written right away,
+ * so export takes memory of a single block regardless of the chain length.
+ * <pre>
+ * JSON Lines:  {"id":1,"complexity":3,"nonce":0,"hash":"hex","merkleRoot":"hex","miner":"title","pruned":false,"transactions":[...]}
+ * transaction: {"id":1,"nonce":0,"amount":100,"sender":account,"recipient":account,"signerKey":key,"signature":"base64"}
+ * account:     {"address":"hex","title":"title","key":key}, key is {"scheme":"RSA","encoded":"base64"} or null
+ * binary:      [magic:int]{[length:int][crc32:int][pruned:byte][block]}
+ * </pre>
+ * Signer key is omitted if the transaction is signed by its sender, signature is null for unsigned transactions.
+ * Pruned blocks are exported as headers.
+ */
+public class ChainWriter implements AutoCloseable {
+    static final int BINARY_MAGIC = 0x43484e58;     // "CHNX"
+    static final int RECORD_HEADER_LENGTH = Integer.BYTES * 2 + Byte.BYTES;
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private final WritableByteChannel channel;
+    private final ChainFormat format;
+    private final StringBuilder line;
+    private ByteBuffer buffer;
+    private int blocksWritten;
+
+    public ChainWriter(WritableByteChannel channel, ChainFormat format) throws BlockchainException {
+        this.channel = channel;
+        this.format = format;
+        this.line = new StringBuilder();
+        this.buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        if (format == ChainFormat.BINARY) {
+            buffer.putInt(BINARY_MAGIC).flip();
+            writeBuffer();
+        }
+    }
+
+    /**
+     * Creates writer on top of the stream, closing the writer closes the stream
+     */
+    public ChainWriter(OutputStream out, ChainFormat format) throws BlockchainException {
+        this(Channels.newChannel(out), format);
+    }
+
+    public void write(Block block) throws BlockchainException {
+        if (format == ChainFormat.BINARY) {
+            writeRecord(block);
+        } else {
+            writeLine(block);
+        }
+        writeBuffer();
+        blocksWritten++;
+    }
+
+    public int getBlocksWritten() {
+        return blocksWritten;
+    }
+
+    private void writeRecord(Block block) {
+        int payloadLength = Byte.BYTES + BinaryCodec.blockSize(block);
+        ByteBuffer out = ensureCapacity(RECORD_HEADER_LENGTH - Byte.BYTES + payloadLength);
+        out.position(Integer.BYTES * 2);
+        out.put((byte) (block.isPruned() ? 1 : 0));
+        BinaryCodec.writeBlock(out, block);
+        CRC32 crc = new CRC32();
+        crc.update(out.array(), Integer.BYTES * 2, payloadLength);
+        out.putInt(0, payloadLength).putInt(Integer.BYTES, (int) crc.getValue()).flip();
+    }
+
+    private void writeLine(Block block) {
+        line.setLength(0);
+        line.append("{\"id\":").append(block.getId())
+                .append(",\"complexity\":").append(block.getComplexity())
+                .append(",\"nonce\":").append(block.getNonce())
+                .append(",\"hash\":");
+        appendString(block.getHash());
+        line.append(",\"merkleRoot\":");
+        appendString(block.getMerkleRoot());
+        line.append(",\"miner\":");
+        appendString(block.getMiner());
+        line.append(",\"pruned\":").append(block.isPruned())
+                .append(",\"transactions\":[");
+        boolean isFirst = true;
+        for (Transaction transaction : block.getOrderedTransactions()) {
+            if (!isFirst) {
+                line.append(',');
+            }
+            isFirst = false;
+            appendTransaction(transaction);
+        }
+        line.append("]}\n");
+
+        byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+        ensureCapacity(bytes.length).put(bytes).flip();
+    }
+
+    private void appendTransaction(Transaction transaction) {
+        line.append("{\"id\":").append(transaction.getId())
+                .append(",\"nonce\":").append(transaction.getNonce())
+                .append(",\"amount\":").append(transaction.getAmount())
+                .append(",\"sender\":");
+        appendAccount(transaction.getSender());
+        line.append(",\"recipient\":");
+        appendAccount(transaction.getRecipient());
+        if (!BinaryCodec.isSignedBySender(transaction)) {
+            line.append(",\"signerKey\":");
+            appendKey(transaction.getPublicKey());
+        }
+        line.append(",\"signature\":");
+        appendBytes(transaction.getSignature());
+        line.append('}');
+    }
+
+    private void appendAccount(Miner account) {
+        line.append("{\"address\":");
+        appendString(BlockchainUtil.toHex(account.getAddress()));
+        line.append(",\"title\":");
+        appendString(account.getTitle());
+        line.append(",\"key\":");
+        appendKey(account.getPublicKey());
+        line.append('}');
+    }
+
+    private void appendKey(PublicKey publicKey) {
+        if (publicKey == null) {
+            line.append("null");
+            return;
+        }
+        try {
+            line.append("{\"scheme\":\"").append(SignatureScheme.forKey(publicKey).name()).append("\",\"encoded\":");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+        appendBytes(publicKey.getEncoded());
+        line.append('}');
+    }
+
+    private void appendBytes(byte[] bytes) {
+        if (bytes == null) {
+            line.append("null");
+        } else {
+            line.append('"').append(Base64.getEncoder().encodeToString(bytes)).append('"');
+        }
+    }
+
+    private void appendString(String value) {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c < 0x20) {
+                line.append(String.format("\\u%04x", (int) c));
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    /**
+     * @return cleared buffer which fits given number of bytes, the buffer grows to the largest block written
+     */
+    private ByteBuffer ensureCapacity(int length) {
+        if (buffer.capacity() < length) {
+            buffer = ByteBuffer.allocate(Math.max(length, buffer.capacity() * 2));
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    private void writeBuffer() throws BlockchainException {
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new BlockchainException(TextConstants.UNABLE_TO_EXPORT_CHAIN, e);
+        }
+    }
+
+    @Override
+    public void close() throws BlockchainException {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new BlockchainException(TextConstants.UNABLE_TO_EXPORT_CHAIN, e);
+        }
+    }
+}
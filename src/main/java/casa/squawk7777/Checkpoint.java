@@ -0,0 +1,123 @@
+package casa.squawk7777;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Ledger state as of given chain height: confirmed balances and nonces of all accounts, hash of the head block,
+ * the highest confirmed transaction ID and the transaction index. Chain may be restored from the checkpoint
+ * replaying only later blocks.
+ * <pre>
+ * [magic:int][height:int][head hash:32][highest transaction ID:int]
+ * [count:int]{[account][balance:long]}[count:int]{[account][nonce:long]}[transaction index][crc32:int]
+ * </pre>
+ */
+public class Checkpoint {
+    private static final int MAGIC = 0x43484b33;     // "CHK3"
+
+    private final int height;
+    private final String headHash;
+    private final int highestTransactionId;
+    private final Map<Miner, Long> balances;
+    private final Map<Miner, Long> nonces;
+    private final TransactionIndex transactionIndex;
+
+    public Checkpoint(int height, String headHash, int highestTransactionId, Map<Miner, Long> balances, Map<Miner, Long> nonces,
+                      TransactionIndex transactionIndex) {
+        this.height = height;
+        this.headHash = headHash;
+        this.highestTransactionId = highestTransactionId;
+        this.balances = balances;
+        this.nonces = nonces;
+        this.transactionIndex = transactionIndex;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public String getHeadHash() {
+        return headHash;
+    }
+
+    public int getHighestTransactionId() {
+        return highestTransactionId;
+    }
+
+    public Map<Miner, Long> getBalances() {
+        return balances;
+    }
+
+    public Map<Miner, Long> getNonces() {
+        return nonces;
+    }
+
+    public TransactionIndex getTransactionIndex() {
+        return transactionIndex;
+    }
+
+    public byte[] encode() {
+        int size = Integer.BYTES * 5 + MiningEngine.HASH_LENGTH + Integer.BYTES + transactionIndex.encodedSize();
+        for (Miner account : balances.keySet()) {
+            size += BinaryCodec.accountSize(account) + Long.BYTES;
+        }
+        for (Miner account : nonces.keySet()) {
+            size += BinaryCodec.accountSize(account) + Long.BYTES;
+        }
+        ByteBuffer out = ByteBuffer.allocate(size)
+                .putInt(MAGIC)
+                .putInt(height)
+                .put(BlockchainUtil.fromHex(headHash))
+                .putInt(highestTransactionId);
+        writeValues(out, balances);
+        writeValues(out, nonces);
+        transactionIndex.writeTo(out);
+        CRC32 crc = new CRC32();
+        crc.update(out.array(), 0, out.position());
+        return out.putInt((int) crc.getValue()).array();
+    }
+
+    /**
+     * @throws IllegalArgumentException if data is not a checkpoint or its checksum doesn't match
+     */
+    public static Checkpoint decode(ByteBuffer in, BinaryCodec codec) throws GeneralSecurityException {
+        if (in.remaining() < Integer.BYTES * 2) {
+            throw new IllegalArgumentException(TextConstants.CHECKPOINT_CORRUPTED);
+        }
+        CRC32 crc = new CRC32();
+        ByteBuffer checked = in.duplicate();
+        checked.limit(in.limit() - Integer.BYTES);
+        crc.update(checked);
+        if (in.getInt(in.limit() - Integer.BYTES) != (int) crc.getValue() || in.getInt() != MAGIC) {
+            throw new IllegalArgumentException(TextConstants.CHECKPOINT_CORRUPTED);
+        }
+        int height = in.getInt();
+        byte[] headHash = new byte[MiningEngine.HASH_LENGTH];
+        in.get(headHash);
+        int highestTransactionId = in.getInt();
+        Map<Miner, Long> balances = readValues(in, codec);
+        Map<Miner, Long> nonces = readValues(in, codec);
+        TransactionIndex transactionIndex = TransactionIndex.readFrom(in, codec);
+        return new Checkpoint(height, BlockchainUtil.toHex(headHash), highestTransactionId, balances, nonces, transactionIndex);
+    }
+
+    private static void writeValues(ByteBuffer out, Map<Miner, Long> values) {
+        out.putInt(values.size());
+        values.forEach((account, value) -> {
+            BinaryCodec.writeAccount(out, account);
+            out.putLong(value);
+        });
+    }
+
+    private static Map<Miner, Long> readValues(ByteBuffer in, BinaryCodec codec) throws GeneralSecurityException {
+        int accountNumber = in.getInt();
+        Map<Miner, Long> values = new HashMap<>(accountNumber * 2);
+        for (int i = 0; i < accountNumber; i++) {
+            values.put(codec.readAccount(in), in.getLong());
+        }
+        return values;
+    }
+}
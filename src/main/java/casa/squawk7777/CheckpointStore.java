@@ -0,0 +1,123 @@
+package casa.squawk7777;
+
+import casa.squawk7777.exceptions.BlockchainException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the latest ledger checkpoints on local disk. Checkpoint is written to a temporary file, forced to the device
+ * and atomically renamed, so a crash never leaves partially written checkpoint under the final name.
+ */
+public class CheckpointStore {
+    private static final Logger log = LoggerFactory.getLogger(CheckpointStore.class);
+    private static final String CHECKPOINT_PREFIX = "checkpoint-";
+    private static final String CHECKPOINT_SUFFIX = ".chk";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final int RETAINED_CHECKPOINTS = 2;
+
+    private final Path directory;
+    private final int interval;
+    private final boolean isPruningEnabled;
+
+    /**
+     * @param interval         number of blocks between checkpoints
+     * @param isPruningEnabled whether bodies of blocks covered by the checkpoint are evicted from memory
+     */
+    public CheckpointStore(Path directory, int interval, boolean isPruningEnabled) throws BlockchainException {
+        this.directory = directory;
+        this.interval = interval;
+        this.isPruningEnabled = isPruningEnabled;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new BlockchainException(TextConstants.UNABLE_TO_ACCESS_CHECKPOINTS, e);
+        }
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public boolean isPruningEnabled() {
+        return isPruningEnabled;
+    }
+
+    public void write(Checkpoint checkpoint) throws BlockchainException {
+        Path target = directory.resolve(String.format("%s%010d%s", CHECKPOINT_PREFIX, checkpoint.getHeight(), CHECKPOINT_SUFFIX));
+        Path temporary = target.resolveSibling(target.getFileName() + TEMPORARY_SUFFIX);
+        try {
+            try (FileChannel channel = FileChannel.open(temporary,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer data = ByteBuffer.wrap(checkpoint.encode());
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+                channel.force(true);
+            }
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+            List<Path> checkpoints = listCheckpoints();
+            for (Path outdated : checkpoints.subList(Math.min(RETAINED_CHECKPOINTS, checkpoints.size()), checkpoints.size())) {
+                Files.deleteIfExists(outdated);
+            }
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw new BlockchainException(TextConstants.UNABLE_TO_ACCESS_CHECKPOINTS, e);
+        }
+        log.info("Checkpoint written at height {} with {} accounts", checkpoint.getHeight(), checkpoint.getBalances().size());
+    }
+
+    /**
+     * Loads the latest readable checkpoint not higher than given height, corrupted checkpoints are skipped
+     *
+     * @return checkpoint or null if there is none
+     */
+    public Checkpoint loadLatest(int maxHeight) throws BlockchainException {
+        BinaryCodec codec = new BinaryCodec();
+        try {
+            for (Path path : listCheckpoints()) {
+                try {
+                    Checkpoint checkpoint = Checkpoint.decode(ByteBuffer.wrap(Files.readAllBytes(path)), codec);
+                    if (checkpoint.getHeight() <= maxHeight) {
+                        return checkpoint;
+                    }
+                } catch (GeneralSecurityException | RuntimeException e) {
+                    log.warn("Skipping unreadable checkpoint {}: {}", path, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            throw new BlockchainException(TextConstants.UNABLE_TO_ACCESS_CHECKPOINTS, e);
+        }
+        return null;
+    }
+
+    /**
+     * @return checkpoint files, the latest first
+     */
+    private List<Path> listCheckpoints() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(p -> p.getFileName().toString().startsWith(CHECKPOINT_PREFIX)
+                            && p.getFileName().toString().endsWith(CHECKPOINT_SUFFIX))
+                    .sorted(Comparator.reverseOrder())
+                    .collect(Collectors.toList());
+        }
+    }
+}
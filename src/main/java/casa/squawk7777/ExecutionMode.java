@@ -0,0 +1,66 @@
+package casa.squawk7777;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threading model of client-facing work: transaction producers, miner loops waiting for chain events, queries and
+ * asynchronous notifications. Such tasks spend most of the time blocked, so with virtual threads thousands of them
+ * don't need thousands of platform threads. CPU-bound hashing always runs on a bounded platform pool, see
+ * {@link #newHashingPool()}.
+ */
+public enum ExecutionMode {
+    /**
+     * Every client task gets platform thread of a cached pool
+     */
+    PLATFORM,
+    /**
+     * Every client task gets own virtual thread, falls back to {@link #PLATFORM} on runtimes without virtual threads
+     */
+    VIRTUAL;
+
+    private static final Logger log = LoggerFactory.getLogger(ExecutionMode.class);
+    private static final String VIRTUAL_EXECUTOR_FACTORY = "newVirtualThreadPerTaskExecutor";
+
+    /**
+     * @return mode by its case-insensitive name or {@link #PLATFORM} if name is not given
+     */
+    public static ExecutionMode of(String name) {
+        return name == null ? PLATFORM : valueOf(name.toUpperCase(Locale.ROOT));
+    }
+
+    public ExecutorService newClientExecutor(String threadName) {
+        if (this == VIRTUAL) {
+            try {
+                // resolved reflectively since the code is compiled for runtimes without virtual threads too
+                return (ExecutorService) Executors.class.getMethod(VIRTUAL_EXECUTOR_FACTORY).invoke(null);
+            } catch (ReflectiveOperationException e) {
+                log.warn("Virtual threads are not supported by Java {}, falling back to platform threads",
+                        Runtime.version().feature());
+            }
+        }
+        return Executors.newCachedThreadPool(namedThreads(threadName));
+    }
+
+    /**
+     * Creates pool for CPU-bound work sized to the number of cores, its threads never block on I/O or clients
+     */
+    public static ExecutorService newHashingPool() {
+        return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), namedThreads("hashing"));
+    }
+
+    private static ThreadFactory namedThreads(String threadName) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, threadName + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,291 @@
+package casa.squawk7777;
+
+import casa.squawk7777.exceptions.BlockchainException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Durable append-only block log. Blocks are appended to segment files as {@code [length][crc32][payload]} records
+ * and read back through memory-mapped segments, so only a few recent blocks are kept on the heap.
+ * On open segments are scanned and checksums validated, torn record at the tail of the last segment is truncated.
+ */
+public class FileBlockStore implements BlockStore {
+    private static final Logger log = LoggerFactory.getLogger(FileBlockStore.class);
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+    private static final String SEGMENT_PREFIX = "blocks-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int RECORD_HEADER_LENGTH = Integer.BYTES * 2;
+    private static final int RECENT_BLOCKS = 16;
+
+    /**
+     * Defines when appended data is forced to the storage device
+     */
+    public enum FsyncPolicy {
+        EVERY_BLOCK,
+        EVERY_SEGMENT,
+        NEVER
+    }
+
+    private final Path directory;
+    private final long segmentSize;
+    private final FsyncPolicy fsyncPolicy;
+    private final List<Segment> segments;
+    private final AtomicReferenceArray<Block> recentBlocks;
+    private final BinaryCodec codec;
+
+    private volatile long[] locations;
+    private volatile int size;
+
+    public FileBlockStore(Path directory) throws BlockchainException {
+        this(directory, DEFAULT_SEGMENT_SIZE, FsyncPolicy.EVERY_SEGMENT);
+    }
+
+    public FileBlockStore(Path directory, long segmentSize, FsyncPolicy fsyncPolicy) throws BlockchainException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.fsyncPolicy = fsyncPolicy;
+        this.segments = new CopyOnWriteArrayList<>();
+        this.recentBlocks = new AtomicReferenceArray<>(RECENT_BLOCKS);
+        this.codec = new BinaryCodec();
+        this.locations = new long[1024];
+        open();
+    }
+
+    private void open() throws BlockchainException {
+        try {
+            Files.createDirectories(directory);
+            List<Path> segmentFiles;
+            try (Stream<Path> files = Files.list(directory)) {
+                segmentFiles = files
+                        .filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                                && p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+            for (int i = 0; i < segmentFiles.size(); i++) {
+                Segment segment = new Segment(segmentFiles.get(i));
+                segments.add(segment);
+                scanSegment(segments.size() - 1, segment, i == segmentFiles.size() - 1);
+            }
+        } catch (IOException e) {
+            throw new BlockchainException(TextConstants.UNABLE_TO_ACCESS_BLOCK_STORE, e);
+        }
+        log.info("Block store opened at {}: {} blocks in {} segments", directory, size, segments.size());
+    }
+
+    /**
+     * Indexes records of the segment validating their checksums, block payloads are not decoded
+     */
+    private void scanSegment(int segmentIndex, Segment segment, boolean isLast) throws IOException, BlockchainException {
+        ByteBuffer buffer = segment.view(0, (int) segment.length);
+        long position = 0;
+        CRC32 crc = new CRC32();
+
+        while (position + RECORD_HEADER_LENGTH <= segment.length) {
+            int length = buffer.getInt((int) position);
+            int checksum = buffer.getInt((int) position + Integer.BYTES);
+            long payloadPosition = position + RECORD_HEADER_LENGTH;
+            if (length <= 0 || payloadPosition + length > segment.length) {
+                break;
+            }
+            ByteBuffer payload = buffer.duplicate();
+            payload.position((int) payloadPosition).limit((int) payloadPosition + length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            if (payload.getInt((int) payloadPosition) != size + 1) {
+                throw new BlockchainException(TextConstants.BLOCK_STORE_CORRUPTED);
+            }
+            addLocation(segmentIndex, position);
+            position = payloadPosition + length;
+        }
+
+        if (position < segment.length) {
+            if (!isLast) {
+                throw new BlockchainException(TextConstants.BLOCK_STORE_CORRUPTED);
+            }
+            log.warn("Truncating {} bytes of incomplete record at the end of {}", segment.length - position, segment.path);
+            segment.truncate(position);
+        }
+    }
+
+    @Override
+    public synchronized void append(Block block) throws BlockchainException {
+        if (block.getId() != size + 1) {
+            throw new BlockchainException(TextConstants.HAS_INVALID_ID);
+        }
+        byte[] payload = BinaryCodec.encodeBlock(block);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_LENGTH)
+                .putInt(payload.length)
+                .putInt((int) crc.getValue())
+                .flip();
+
+        try {
+            Segment segment = getActiveSegment(RECORD_HEADER_LENGTH + payload.length, block.getId());
+            long position = segment.write(header, ByteBuffer.wrap(payload));
+            if (fsyncPolicy == FsyncPolicy.EVERY_BLOCK) {
+                segment.channel.force(false);
+            }
+            addLocation(segments.size() - 1, position);
+        } catch (IOException e) {
+            throw new BlockchainException(TextConstants.UNABLE_TO_ACCESS_BLOCK_STORE, e);
+        }
+        recentBlocks.set(block.getId() % RECENT_BLOCKS, block);
+    }
+
+    /**
+     * Truncates the record of the last block, segment left empty is reused by the next append
+     */
+    @Override
+    public synchronized void removeLast() throws BlockchainException {
+        if (size == 0) {
+            throw new BlockchainException(TextConstants.UNABLE_TO_REMOVE_BLOCK);
+        }
+        long location = locations[size - 1];
+        try {
+            segments.get((int) (location >>> 32)).truncate((int) location);
+        } catch (IOException e) {
+            throw new BlockchainException(TextConstants.UNABLE_TO_ACCESS_BLOCK_STORE, e);
+        }
+        recentBlocks.set(size % RECENT_BLOCKS, null);
+        size--;
+    }
+
+    private Segment getActiveSegment(int recordLength, int firstBlockId) throws IOException {
+        Segment active = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (active == null || (active.length > 0 && active.length + recordLength > segmentSize)) {
+            if (active != null && fsyncPolicy != FsyncPolicy.NEVER) {
+                active.channel.force(false);
+            }
+            active = new Segment(directory.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, firstBlockId, SEGMENT_SUFFIX)));
+            segments.add(active);
+        }
+        return active;
+    }
+
+    private void addLocation(int segmentIndex, long position) {
+        long[] current = locations;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+            locations = current;
+        }
+        current[size] = ((long) segmentIndex << 32) | position;
+        size++;
+    }
+
+    @Override
+    public Block get(int id) {
+        if (id < 1 || id > size) {
+            throw new IndexOutOfBoundsException("Block ID " + id + " is out of stored range 1.." + size);
+        }
+        Block recent = recentBlocks.get(id % RECENT_BLOCKS);
+        if (recent != null && recent.getId() == id) {
+            return recent;
+        }
+
+        long location = locations[id - 1];
+        Segment segment = segments.get((int) (location >>> 32));
+        int position = (int) location;
+        try {
+            ByteBuffer header = segment.view(position, RECORD_HEADER_LENGTH);
+            return codec.readBlock(segment.view(position + RECORD_HEADER_LENGTH, header.getInt()));
+        } catch (IOException | GeneralSecurityException e) {
+            throw new IllegalStateException(TextConstants.BLOCK_STORE_CORRUPTED, e);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized void close() throws BlockchainException {
+        try {
+            for (Segment segment : segments) {
+                if (fsyncPolicy != FsyncPolicy.NEVER) {
+                    segment.channel.force(false);
+                }
+                segment.channel.close();
+            }
+        } catch (IOException e) {
+            throw new BlockchainException(TextConstants.UNABLE_TO_ACCESS_BLOCK_STORE, e);
+        }
+    }
+
+    private static class Segment {
+        private final Path path;
+        private final FileChannel channel;
+        private long length;
+        private volatile MappedByteBuffer mapping;
+
+        private Segment(Path path) throws IOException {
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.length = channel.size();
+        }
+
+        /**
+         * Appends record at the end of the segment
+         *
+         * @return position of the record
+         */
+        private long write(ByteBuffer... record) throws IOException {
+            long position = length;
+            channel.position(position);
+            while (record[record.length - 1].hasRemaining()) {
+                channel.write(record);
+            }
+            length = channel.position();
+            return position;
+        }
+
+        private void truncate(long newLength) throws IOException {
+            channel.truncate(newLength);
+            length = newLength;
+            mapping = null;
+        }
+
+        /**
+         * Returns read-only view of the mapped region, segment is remapped when the region is not covered yet
+         */
+        private ByteBuffer view(long position, int viewLength) throws IOException {
+            MappedByteBuffer current = mapping;
+            if (current == null || current.capacity() < position + viewLength) {
+                current = remap(position + viewLength);
+            }
+            ByteBuffer view = current.duplicate();
+            view.position((int) position).limit((int) position + viewLength);
+            return view.slice();
+        }
+
+        private synchronized MappedByteBuffer remap(long requiredLength) throws IOException {
+            MappedByteBuffer current = mapping;
+            if (current == null || current.capacity() < requiredLength) {
+                current = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                mapping = current;
+            }
+            return current;
+        }
+    }
+}
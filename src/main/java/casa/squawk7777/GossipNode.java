@@ -0,0 +1,769 @@
+package casa.squawk7777;
+
+import casa.squawk7777.exceptions.BlockchainException;
+import casa.squawk7777.exceptions.InvalidBlockException;
+import casa.squawk7777.exceptions.InvalidSignatureException;
+import casa.squawk7777.exceptions.TransactionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Node exchanging transactions and blocks of its {@link Blockchain} with peer nodes over non-blocking TCP channels,
+ * all of them served by a single selector thread. Messages are length-prefixed frames:
+ * <pre>
+ * frame:   [length:int][type:byte][payload], length covers type and payload
+ * INV:     [count:int]{[kind:byte][id:int][hash:32]}    announces transactions or blocks
+ * GETDATA: [count:int]{[kind:byte][id:int][hash:32]}    requests announced items, zero block hash means any block with the ID
+ * TX:      [count:int]{transaction}
+ * BLOCK:   block
+ * </pre>
+ * Accepted transactions and committed blocks are not pushed to peers: their inventory is queued and flushed as one
+ * INV frame per peer every relay interval, skipping items the peer is known to have. Peers request what they lack,
+ * so every item crosses each link at most once. Transaction is identified by its Merkle leaf hash.
+ * <p>
+ * Received transactions go through the admission pipeline, received blocks are offered to the blockchain by a single
+ * processor thread. Node which is behind requests missing blocks by ID. Blocks which don't extend the local chain
+ * (e.g. found by two nodes at once) are kept aside; when they form a longer branch, local blocks above the fork point
+ * are rolled back and replaced, so all nodes converge on the longest chain. Chain which is closed or pruned
+ * above the fork point is not switched.
+ */
+public class GossipNode implements BlockchainListener, AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(GossipNode.class);
+    public static final long DEFAULT_RELAY_INTERVAL_MS = 50L;
+    private static final long RECONNECT_INTERVAL_MS = 2000L;
+    private static final long CATCH_UP_TIMEOUT_MS = 5000L;
+    private static final long LINGER_MS = 1000L;
+    private static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+    private static final int MAX_QUEUED_BYTES = 64 * 1024 * 1024;
+    private static final int MAX_BLOCKS_PER_REQUEST = 256;
+    private static final int MAX_SIDE_BLOCKS = 1024;
+    private static final int MAX_REORG_DEPTH = 512;
+    private static final int SEEN_CAPACITY = 200_000;
+    private static final int PEER_KNOWN_CAPACITY = 50_000;
+    private static final int RELAY_CACHE_CAPACITY = 50_000;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private static final byte INV = 1;
+    private static final byte GETDATA = 2;
+    private static final byte TX = 3;
+    private static final byte BLOCK = 4;
+    private static final byte KIND_TRANSACTION = 1;
+    private static final byte KIND_BLOCK = 2;
+    private static final int INVENTORY_LENGTH = Byte.BYTES + Integer.BYTES + MerkleTree.HASH_LENGTH;
+
+    private final Blockchain blockchain;
+    private final TransactionPipeline pipeline;
+    private final List<InetSocketAddress> peerAddresses;
+    private final long relayInterval;
+    private final BinaryCodec codec;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Thread ioThread;
+    private final ExecutorService processor;
+    private final Queue<Inventory> announcements;
+    private final Queue<Runnable> tasks;
+
+    // state below is confined to the selector thread
+    private final List<Peer> peers;
+    private final Map<InetSocketAddress, Long> reconnectAt;
+    private final Set<Inventory> seen;
+    private final Map<Inventory, Transaction> relayCache;
+    private int requestedUpTo;
+    private long requestedAt;
+    private long lastReadAt;
+
+    // state below is confined to the processor thread
+    private final TreeMap<Integer, Block> sideBlocks;
+
+    private volatile boolean isDraining;
+    private volatile boolean isClosed;
+
+    /**
+     * @param port          port to accept peer connections on
+     * @param peerAddresses peers to connect to, connections are re-established when lost
+     * @param pipeline      admission pipeline for received transactions or null to offer them directly
+     */
+    public GossipNode(Blockchain blockchain, TransactionPipeline pipeline, int port, List<InetSocketAddress> peerAddresses) throws BlockchainException {
+        this(blockchain, pipeline, new InetSocketAddress(port), peerAddresses, DEFAULT_RELAY_INTERVAL_MS);
+    }
+
+    public GossipNode(Blockchain blockchain, TransactionPipeline pipeline, InetSocketAddress bindAddress,
+                      List<InetSocketAddress> peerAddresses, long relayInterval) throws BlockchainException {
+        this.blockchain = blockchain;
+        this.pipeline = pipeline;
+        this.peerAddresses = peerAddresses;
+        this.relayInterval = relayInterval;
+        this.codec = new BinaryCodec();
+        this.announcements = new ConcurrentLinkedQueue<>();
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.peers = new ArrayList<>();
+        this.reconnectAt = new HashMap<>();
+        this.seen = newBoundedSet(SEEN_CAPACITY);
+        this.relayCache = newBoundedMap(RELAY_CACHE_CAPACITY);
+        this.sideBlocks = new TreeMap<>();
+        try {
+            this.selector = Selector.open();
+            this.serverChannel = ServerSocketChannel.open();
+            this.serverChannel.bind(bindAddress);
+            this.serverChannel.configureBlocking(false);
+            this.serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            throw new BlockchainException(TextConstants.UNABLE_TO_START_NODE, e);
+        }
+        this.processor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "gossip-processor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.ioThread = new Thread(this::ioLoop, "gossip-io");
+        this.ioThread.setDaemon(true);
+    }
+
+    /**
+     * Starts serving peers and relaying changes of the blockchain
+     */
+    public void start() {
+        peerAddresses.forEach(address -> reconnectAt.put(address, 0L));
+        blockchain.addListener(this);
+        ioThread.start();
+        log.info("Node listens on {}, peers: {}", serverChannel.socket().getLocalSocketAddress(), peerAddresses);
+    }
+
+    public InetSocketAddress getLocalAddress() {
+        return (InetSocketAddress) serverChannel.socket().getLocalSocketAddress();
+    }
+
+    @Override
+    public void onTransactionAccepted(Transaction transaction) {
+        try {
+            announcements.add(new Inventory(KIND_TRANSACTION, transaction.getId(), MerkleTree.hashLeaf(transaction), transaction));
+        } catch (BlockchainException e) {
+            log.error("Unable to announce transaction #{}: {}", transaction.getId(), e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void onBlockCommitted(Block block) {
+        announcements.add(new Inventory(KIND_BLOCK, block.getId(), BlockchainUtil.fromHex(block.getHash()), null));
+    }
+
+    private void ioLoop() {
+        long nextRelayAt = 0;
+        try {
+            while (!isClosed && !(isDraining && isDrained())) {
+                selector.select(Math.max(1L, nextRelayAt - System.currentTimeMillis()));
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handleKey(key);
+                }
+                long now = System.currentTimeMillis();
+                if (now >= nextRelayAt || isDraining) {
+                    relayAnnouncements();
+                    connectPeers(now);
+                    nextRelayAt = now + relayInterval;
+                }
+            }
+        } catch (IOException e) {
+            log.error("Node selector failed: {}", e.getMessage(), e);
+        } finally {
+            peers.forEach(peer -> closeQuietly(peer.channel));
+            closeQuietly(serverChannel);
+            closeQuietly(selector);
+        }
+    }
+
+    /**
+     * Node being closed is drained once everything announced is relayed and written out, and peers have been quiet
+     * for a relay interval, so they had a chance to fetch the announced blocks
+     */
+    private boolean isDrained() {
+        if (!announcements.isEmpty() || !tasks.isEmpty() || System.currentTimeMillis() - lastReadAt < relayInterval) {
+            return false;
+        }
+        for (Peer peer : peers) {
+            if (!peer.writeQueue.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void handleKey(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isAcceptable()) {
+            acceptPeer();
+            return;
+        }
+        Peer peer = (Peer) key.attachment();
+        try {
+            if (key.isConnectable()) {
+                peer.channel.finishConnect();
+                key.interestOps(SelectionKey.OP_READ);
+                greet(peer);
+            }
+            if (key.isValid() && key.isReadable()) {
+                readFrames(peer);
+            }
+            if (key.isValid() && key.isWritable()) {
+                flushWrites(peer);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.debug("Dropping peer {}: {}", peer.address, e.getMessage());
+            dropPeer(peer);
+        }
+    }
+
+    private void acceptPeer() {
+        try {
+            SocketChannel channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+            Peer peer = new Peer(channel, (InetSocketAddress) channel.getRemoteAddress(), false);
+            peer.key = channel.register(selector, SelectionKey.OP_READ, peer);
+            peers.add(peer);
+            log.info("Accepted peer {}", peer.address);
+            greet(peer);
+        } catch (IOException e) {
+            log.warn("Unable to accept peer: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Opens connections to configured peers which are not connected and whose reconnect delay is over
+     */
+    private void connectPeers(long now) {
+        for (Map.Entry<InetSocketAddress, Long> entry : reconnectAt.entrySet()) {
+            if (entry.getValue() < 0 || entry.getValue() > now) {
+                continue;
+            }
+            entry.setValue(-1L);
+            try {
+                SocketChannel channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                Peer peer = new Peer(channel, entry.getKey(), true);
+                peer.key = channel.register(selector, SelectionKey.OP_CONNECT, peer);
+                peers.add(peer);
+                if (channel.connect(entry.getKey())) {
+                    peer.key.interestOps(SelectionKey.OP_READ);
+                    greet(peer);
+                }
+            } catch (IOException e) {
+                log.debug("Unable to connect to {}: {}", entry.getKey(), e.getMessage());
+                entry.setValue(now + RECONNECT_INTERVAL_MS);
+            }
+        }
+    }
+
+    /**
+     * Announces the chain head to the new peer, so the one which is behind starts catching up
+     */
+    private void greet(Peer peer) {
+        Block lastBlock = blockchain.getLastBlock();
+        if (lastBlock.getId() > 0) {
+            send(peer, INV, inventoryPayload(List.of(
+                    new Inventory(KIND_BLOCK, lastBlock.getId(), BlockchainUtil.fromHex(lastBlock.getHash()), null))));
+        }
+    }
+
+    private void dropPeer(Peer peer) {
+        closeQuietly(peer.channel);
+        peers.remove(peer);
+        if (peer.isOutbound && !isClosed) {
+            reconnectAt.put(peer.address, System.currentTimeMillis() + RECONNECT_INTERVAL_MS);
+        }
+    }
+
+    /**
+     * Sends single INV frame with all inventory queued since the previous relay to every peer, skipping items
+     * the peer already has
+     */
+    private void relayAnnouncements() {
+        List<Inventory> batch = new ArrayList<>();
+        Inventory item;
+        while ((item = announcements.poll()) != null) {
+            seen.add(item);
+            if (item.transaction != null) {
+                relayCache.put(item, item.transaction);
+            }
+            batch.add(item);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        for (Peer peer : new ArrayList<>(peers)) {
+            if (peer.key.interestOps() == SelectionKey.OP_CONNECT) {
+                continue;
+            }
+            List<Inventory> unknown = new ArrayList<>(batch.size());
+            for (Inventory inventory : batch) {
+                if (peer.known.add(inventory)) {
+                    unknown.add(inventory);
+                }
+            }
+            if (!unknown.isEmpty()) {
+                send(peer, INV, inventoryPayload(unknown));
+            }
+        }
+    }
+
+    private void readFrames(Peer peer) throws IOException {
+        if (peer.channel.read(peer.readBuffer) < 0) {
+            throw new IOException("Connection closed by peer");
+        }
+        lastReadAt = System.currentTimeMillis();
+        ByteBuffer buffer = peer.readBuffer.flip();
+        while (buffer.remaining() >= Integer.BYTES) {
+            int length = buffer.getInt(buffer.position());
+            if (length <= 0 || length > MAX_FRAME_LENGTH) {
+                throw new IOException("Invalid frame length " + length);
+            }
+            if (buffer.remaining() < Integer.BYTES + length) {
+                break;
+            }
+            buffer.getInt();
+            byte type = buffer.get();
+            ByteBuffer payload = buffer.slice().limit(length - 1);
+            buffer.position(buffer.position() + length - 1);
+            handleFrame(peer, type, payload);
+        }
+        buffer.compact();
+        if (!buffer.hasRemaining()) {
+            peer.readBuffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer.flip());
+        }
+    }
+
+    private void handleFrame(Peer peer, byte type, ByteBuffer payload) throws IOException {
+        try {
+            switch (type) {
+                case INV:
+                    handleInventory(peer, readInventory(payload));
+                    break;
+                case GETDATA:
+                    handleDataRequest(peer, readInventory(payload));
+                    break;
+                case TX:
+                    handleTransactions(peer, payload);
+                    break;
+                case BLOCK:
+                    handleBlock(peer, codec.readBlock(payload));
+                    break;
+                default:
+                    throw new IOException("Unknown frame type " + type);
+            }
+        } catch (GeneralSecurityException | BlockchainException | BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Malformed frame: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Requests announced items which are not seen yet. Block far ahead of the local head means the node is behind,
+     * so the blocks in between are requested by ID as well.
+     */
+    private void handleInventory(Peer peer, List<Inventory> items) {
+        List<Inventory> requested = new ArrayList<>();
+        Block lastBlock = blockchain.getLastBlock();
+        int height = lastBlock.getId();
+        for (Inventory item : items) {
+            peer.known.add(item);
+            boolean isStored = item.id < height
+                    || (item.id == height && Arrays.equals(item.hash, BlockchainUtil.fromHex(lastBlock.getHash())));
+            if (item.kind == KIND_BLOCK && isStored) {
+                continue;
+            }
+            if (!seen.add(item)) {
+                continue;
+            }
+            if (item.kind == KIND_BLOCK && item.id > height + 1) {
+                requested.addAll(getMissingBlocks(height, item.id));
+            }
+            requested.add(item);
+        }
+        if (!requested.isEmpty()) {
+            send(peer, GETDATA, inventoryPayload(requested));
+        }
+    }
+
+    private List<Inventory> getMissingBlocks(int height, int announcedId) {
+        long now = System.currentTimeMillis();
+        if (requestedUpTo <= height || now - requestedAt > CATCH_UP_TIMEOUT_MS) {
+            requestedUpTo = height;
+        }
+        int lastId = Math.min(announcedId - 1, height + MAX_BLOCKS_PER_REQUEST);
+        List<Inventory> missing = getBlockRange(requestedUpTo + 1, lastId);
+        if (!missing.isEmpty()) {
+            requestedUpTo = lastId;
+            requestedAt = now;
+        }
+        return missing;
+    }
+
+    private void handleDataRequest(Peer peer, List<Inventory> items) {
+        List<Transaction> transactions = new ArrayList<>();
+        int height = blockchain.getLastBlock().getId();
+        for (Inventory item : items) {
+            if (item.kind == KIND_TRANSACTION) {
+                Transaction transaction = relayCache.get(item);
+                if (transaction != null) {
+                    transactions.add(transaction);
+                }
+            } else if (item.id >= 1 && item.id <= height) {
+                Block block = blockchain.getBlockById(item.id);
+                boolean isMatching = Arrays.equals(item.hash, new byte[MerkleTree.HASH_LENGTH])
+                        || Arrays.equals(item.hash, BlockchainUtil.fromHex(block.getHash()));
+                if (isMatching && !block.isPruned()) {
+                    ByteBuffer payload = ByteBuffer.allocate(BinaryCodec.blockSize(block));
+                    BinaryCodec.writeBlock(payload, block);
+                    send(peer, BLOCK, payload.flip());
+                }
+            }
+        }
+        if (!transactions.isEmpty()) {
+            int size = Integer.BYTES;
+            for (Transaction transaction : transactions) {
+                size += BinaryCodec.transactionSize(transaction);
+            }
+            ByteBuffer payload = ByteBuffer.allocate(size).putInt(transactions.size());
+            transactions.forEach(t -> BinaryCodec.writeTransaction(payload, t));
+            send(peer, TX, payload.flip());
+        }
+    }
+
+    private void handleTransactions(Peer peer, ByteBuffer payload) throws GeneralSecurityException, BlockchainException {
+        int count = payload.getInt();
+        for (int i = 0; i < count; i++) {
+            Transaction transaction = codec.readTransaction(payload);
+            Inventory item = new Inventory(KIND_TRANSACTION, transaction.getId(), MerkleTree.hashLeaf(transaction), null);
+            peer.known.add(item);
+            seen.add(item);
+            if (pipeline != null) {
+                pipeline.trySubmit(transaction).whenComplete((t, e) -> logRejection(transaction, e));
+            } else {
+                processor.execute(() -> offerTransaction(transaction));
+            }
+        }
+    }
+
+    private void offerTransaction(Transaction transaction) {
+        try {
+            blockchain.offerTransaction(transaction);
+        } catch (TransactionException | GeneralSecurityException | InvalidSignatureException | BlockchainException e) {
+            logRejection(transaction, e);
+        }
+    }
+
+    private static void logRejection(Transaction transaction, Throwable e) {
+        if (e != null) {
+            log.debug("Relayed transaction #{} rejected: {}", transaction.getId(), e.getMessage());
+        }
+    }
+
+    private void handleBlock(Peer peer, Block block) {
+        Inventory item = new Inventory(KIND_BLOCK, block.getId(), BlockchainUtil.fromHex(block.getHash()), null);
+        peer.known.add(item);
+        seen.add(item);
+        processor.execute(() -> processBlock(peer, block));
+    }
+
+    /**
+     * Keeps received block among the side blocks, then appends those which extend the local chain. If side blocks
+     * form longer branch, missing ancestors are requested from the peer until the fork point is found.
+     */
+    private void processBlock(Peer peer, Block block) {
+        int height = blockchain.getLastBlock().getId();
+        if (block.getId() <= height && blockchain.getBlockById(block.getId()).getHash().equals(block.getHash())) {
+            return;
+        }
+        if (sideBlocks.size() >= MAX_SIDE_BLOCKS) {
+            sideBlocks.clear();
+        }
+        sideBlocks.put(block.getId(), block);
+
+        Block next;
+        while ((next = sideBlocks.get(blockchain.getLastBlock().getId() + 1)) != null && isParent(blockchain.getLastBlock(), next)) {
+            sideBlocks.remove(next.getId());
+            offerBlock(next);
+        }
+        if (!sideBlocks.isEmpty() && sideBlocks.lastKey() > blockchain.getLastBlock().getId()) {
+            findForkPoint(peer);
+        }
+        sideBlocks.headMap(blockchain.getLastBlock().getId() - MAX_REORG_DEPTH, true).clear();
+    }
+
+    /**
+     * Walks down from the highest side block while side blocks link to each other. Once the next one links
+     * to the local chain, node switches to the branch, otherwise ancestors missing below are requested.
+     */
+    private void findForkPoint(Peer peer) {
+        int height = blockchain.getLastBlock().getId();
+        Block branchBlock = sideBlocks.lastEntry().getValue();
+        while (branchBlock.getId() > height - MAX_REORG_DEPTH) {
+            int parentId = branchBlock.getId() - 1;
+            if (parentId <= height && isParent(blockchain.getBlockById(parentId), branchBlock)) {
+                switchBranch(parentId, sideBlocks.lastKey());
+                return;
+            }
+            Block parent = sideBlocks.get(parentId);
+            if (parent == null || !isParent(parent, branchBlock)) {
+                int fromId = Math.max(1, parentId - MAX_BLOCKS_PER_REQUEST + 1);
+                tasks.add(() -> send(peer, GETDATA, inventoryPayload(getBlockRange(fromId, parentId))));
+                selector.wakeup();
+                return;
+            }
+            branchBlock = parent;
+        }
+        log.warn("Branch ending with block #{} forks deeper than {} blocks, ignoring it", sideBlocks.lastKey(), MAX_REORG_DEPTH);
+        sideBlocks.clear();
+    }
+
+    /**
+     * Replaces local blocks above the fork point with the side blocks, restoring local blocks if the branch is invalid
+     */
+    private void switchBranch(int forkId, int lastId) {
+        Deque<Block> replaced = new ArrayDeque<>();
+        try {
+            while (blockchain.getLastBlock().getId() > forkId) {
+                replaced.push(blockchain.rollbackLastBlock());
+            }
+            for (int id = forkId + 1; id <= lastId; id++) {
+                blockchain.offerRelayedBlock(sideBlocks.remove(id));
+            }
+            log.info("Switched to branch of {} blocks forked after block #{}", lastId - forkId, forkId);
+        } catch (InvalidBlockException | TransactionException | BlockchainException e) {
+            log.warn("Unable to switch to branch forked after block #{}, restoring local blocks: {}", forkId, e.getMessage());
+            sideBlocks.clear();
+            try {
+                while (blockchain.getLastBlock().getId() > forkId) {
+                    blockchain.rollbackLastBlock();
+                }
+                for (Block block : replaced) {
+                    blockchain.offerRelayedBlock(block);
+                }
+            } catch (InvalidBlockException | TransactionException | BlockchainException restoreException) {
+                log.error("Unable to restore local blocks: {}", restoreException.getMessage(), restoreException);
+            }
+        }
+    }
+
+    private void offerBlock(Block block) {
+        try {
+            blockchain.offerRelayedBlock(block);
+        } catch (InvalidBlockException | TransactionException | BlockchainException e) {
+            log.debug("Relayed block #{} rejected: {}", block.getId(), e.getMessage());
+        }
+    }
+
+    private boolean isParent(Block parent, Block block) {
+        try {
+            return block.getId() == parent.getId() + 1 && BlockchainUtil.calculateBlockHash(
+                    block.getMerkleRoot(), block.getComplexity(), block.getNonce(), parent.getHash()).equals(block.getHash());
+        } catch (BlockchainException e) {
+            return false;
+        }
+    }
+
+    private static List<Inventory> getBlockRange(int fromId, int toId) {
+        List<Inventory> range = new ArrayList<>();
+        for (int id = fromId; id <= toId; id++) {
+            range.add(new Inventory(KIND_BLOCK, id, new byte[MerkleTree.HASH_LENGTH], null));
+        }
+        return range;
+    }
+
+    /**
+     * Writes frame right away, the part which doesn't fit into the socket buffer is queued until the channel is writable
+     */
+    private void send(Peer peer, byte type, ByteBuffer payload) {
+        ByteBuffer frame = ByteBuffer.allocate(Integer.BYTES + Byte.BYTES + payload.remaining())
+                .putInt(Byte.BYTES + payload.remaining())
+                .put(type)
+                .put(payload)
+                .flip();
+        peer.writeQueue.add(frame);
+        peer.queuedBytes += frame.remaining();
+        try {
+            if (peer.queuedBytes > MAX_QUEUED_BYTES) {
+                throw new IOException("Peer doesn't keep up with relayed data");
+            }
+            if (peer.key.interestOps() != SelectionKey.OP_CONNECT) {
+                flushWrites(peer);
+            }
+        } catch (IOException e) {
+            log.debug("Dropping peer {}: {}", peer.address, e.getMessage());
+            dropPeer(peer);
+        }
+    }
+
+    private void flushWrites(Peer peer) throws IOException {
+        while (!peer.writeQueue.isEmpty()) {
+            ByteBuffer frame = peer.writeQueue.peek();
+            peer.queuedBytes -= peer.channel.write(frame);
+            if (frame.hasRemaining()) {
+                peer.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            peer.writeQueue.poll();
+        }
+        peer.key.interestOps(SelectionKey.OP_READ);
+    }
+
+    private static ByteBuffer inventoryPayload(List<Inventory> items) {
+        ByteBuffer payload = ByteBuffer.allocate(Integer.BYTES + INVENTORY_LENGTH * items.size()).putInt(items.size());
+        for (Inventory item : items) {
+            payload.put(item.kind).putInt(item.id).put(item.hash);
+        }
+        return payload.flip();
+    }
+
+    private static List<Inventory> readInventory(ByteBuffer payload) {
+        int count = payload.getInt();
+        if (count < 0 || count > payload.remaining() / INVENTORY_LENGTH) {
+            throw new IllegalArgumentException("Invalid inventory size " + count);
+        }
+        List<Inventory> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte kind = payload.get();
+            int id = payload.getInt();
+            byte[] hash = new byte[MerkleTree.HASH_LENGTH];
+            payload.get(hash);
+            items.add(new Inventory(kind, id, hash, null));
+        }
+        return items;
+    }
+
+    /**
+     * Stops relaying: queued announcements are flushed and peers are served until they are quiet for a relay
+     * interval, so they are able to fetch the last announced blocks. Each stage is bounded by a linger timeout.
+     */
+    @Override
+    public void close() {
+        blockchain.removeListener(this);
+        isDraining = true;
+        selector.wakeup();
+        try {
+            ioThread.join(LINGER_MS);
+            isClosed = true;
+            selector.wakeup();
+            ioThread.join(LINGER_MS);
+            processor.shutdown();
+            processor.awaitTermination(LINGER_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            processor.shutdownNow();
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            log.debug("Unable to close {}: {}", closeable, e.getMessage());
+        }
+    }
+
+    private static <K> Set<K> newBoundedSet(int capacity) {
+        return Collections.newSetFromMap(newBoundedMap(capacity));
+    }
+
+    /**
+     * @return map evicting the eldest entry once capacity is exceeded
+     */
+    private static <K, V> Map<K, V> newBoundedMap(int capacity) {
+        return new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Inventory item identifying transaction or block, transaction itself is attached to the local announcements
+     */
+    private static class Inventory {
+        private final byte kind;
+        private final int id;
+        private final byte[] hash;
+        private final Transaction transaction;
+
+        private Inventory(byte kind, int id, byte[] hash, Transaction transaction) {
+            if (kind != KIND_TRANSACTION && kind != KIND_BLOCK) {
+                throw new IllegalArgumentException("Unknown inventory kind " + kind);
+            }
+            this.kind = kind;
+            this.id = id;
+            this.hash = hash;
+            this.transaction = transaction;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Inventory that = (Inventory) o;
+            return kind == that.kind && id == that.id && Arrays.equals(hash, that.hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * id + Arrays.hashCode(hash);
+        }
+    }
+
+    private static class Peer {
+        private final SocketChannel channel;
+        private final InetSocketAddress address;
+        private final boolean isOutbound;
+        private final Deque<ByteBuffer> writeQueue;
+        private final Set<Inventory> known;
+        private ByteBuffer readBuffer;
+        private SelectionKey key;
+        private long queuedBytes;
+
+        private Peer(SocketChannel channel, InetSocketAddress address, boolean isOutbound) {
+            this.channel = channel;
+            this.address = address;
+            this.isOutbound = isOutbound;
+            this.writeQueue = new ArrayDeque<>();
+            this.known = newBoundedSet(PEER_KNOWN_CAPACITY);
+            this.readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package casa.squawk7777;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the whole chain on the heap, nothing survives the restart. Pruned blocks are replaced by their headers.
+ */
+public class InMemoryBlockStore implements BlockStore {
+    private final List<Block> blocks;
+
+    public InMemoryBlockStore() {
+        this.blocks = new ArrayList<>();
+    }
+
+    @Override
+    public void append(Block block) {
+        blocks.add(block);
+    }
+
+    @Override
+    public Block get(int id) {
+        return blocks.get(id - 1);
+    }
+
+    @Override
+    public void prune(int lastId) {
+        for (int i = lastId - 1; i >= 0 && !blocks.get(i).isPruned(); i--) {
+            blocks.set(i, blocks.get(i).toHeader());
+        }
+    }
+
+    @Override
+    public boolean isPruningSupported() {
+        return true;
+    }
+
+    @Override
+    public void removeLast() {
+        blocks.remove(blocks.size() - 1);
+    }
+
+    @Override
+    public int size() {
+        return blocks.size();
+    }
+
+    @Override
+    public void close() {
+        // nothing to release
+    }
+}
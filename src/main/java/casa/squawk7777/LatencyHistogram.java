@@ -0,0 +1,115 @@
+package casa.squawk7777;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative values (typically nanoseconds) with log-linear buckets: every power-of-two range
+ * is split into {@value #SUB_BUCKET_NUMBER} linear sub-buckets, so a percentile reported as the bucket upper bound
+ * is off by at most 1/{@value #SUB_BUCKET_NUMBER} of the value. Counters are striped by thread, so threads recording
+ * at the same time rarely increment the same slot; stripes are merged when percentiles are read.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_NUMBER = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_NUMBER = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_NUMBER;
+    private static final int MAX_STRIPES = 8;
+    private static final int STRIPE_MASK = Math.min(MAX_STRIPES, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1)) - 1;
+
+    private final AtomicLongArray[] stripes;
+    private final LongAdder count;
+    private final LongAdder sum;
+    private final AtomicLong max;
+
+    public LatencyHistogram() {
+        this.stripes = new AtomicLongArray[STRIPE_MASK + 1];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new AtomicLongArray(BUCKET_NUMBER);
+        }
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+        this.max = new AtomicLong();
+    }
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        long threadId = Thread.currentThread().getId();
+        stripes[(int) (threadId ^ (threadId >>> 16)) & STRIPE_MASK].incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long total = count.sum();
+        return total == 0 ? 0 : (double) sum.sum() / total;
+    }
+
+    /**
+     * Estimates value below which given share of recorded values falls
+     *
+     * @param percentile value in range 0..100
+     * @return upper bound of the bucket containing the percentile
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        long[] counts = new long[BUCKET_NUMBER];
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKET_NUMBER; i++) {
+                long bucketCount = stripe.get(i);
+                counts[i] += bucketCount;
+                total += bucketCount;
+            }
+        }
+        long threshold = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_NUMBER; i++) {
+            seen += counts[i];
+            if (seen >= threshold && counts[i] > 0) {
+                return Math.min(upperBoundOf(i), getMax());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Values below {@value #SUB_BUCKET_NUMBER} get a bucket each, larger ones are located by the highest set bit
+     * and the {@value #SUB_BUCKET_BITS} bits following it
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKET_NUMBER) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKET_NUMBER + (int) (value >>> shift) - SUB_BUCKET_NUMBER;
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKET_NUMBER) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKET_NUMBER - 1;
+        long subBucket = SUB_BUCKET_NUMBER + bucket % SUB_BUCKET_NUMBER;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.0f p50=%d p99=%d max=%d",
+                getCount(), getMean(), getPercentile(50), getPercentile(99), getMax());
+    }
+}
@@ -0,0 +1,136 @@
+package casa.squawk7777;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Account-state index maintained incrementally by {@link Blockchain}: confirmed balance per account
+ * and a pending delta produced by transactions waiting in the pool. It also tracks the highest confirmed and
+ * pending nonce of every sender, which protects against replays: every transaction of the account must carry
+ * the nonce following the previous one, so senders never depend on each other.
+ * Mutations are expected under the blockchain write lock, lookups are lock-free and O(1).
+ */
+public class Ledger {
+    private final Map<Miner, Long> confirmedBalances;
+    private final Map<Miner, Long> pendingDeltas;
+    private final Map<Miner, Long> confirmedNonces;
+    private final Map<Miner, Long> pendingNonces;
+
+    public Ledger() {
+        this.confirmedBalances = new ConcurrentHashMap<>();
+        this.pendingDeltas = new ConcurrentHashMap<>();
+        this.confirmedNonces = new ConcurrentHashMap<>();
+        this.pendingNonces = new ConcurrentHashMap<>();
+    }
+
+    public long getConfirmedBalance(Miner miner) {
+        return confirmedBalances.getOrDefault(miner, 0L);
+    }
+
+    public long getPendingDelta(Miner miner) {
+        return pendingDeltas.getOrDefault(miner, 0L);
+    }
+
+    public long getEstimatedBalance(Miner miner) {
+        return getConfirmedBalance(miner) + getPendingDelta(miner);
+    }
+
+    /**
+     * @return nonce of the last confirmed transaction sent by the account, 0 if there is none
+     */
+    public long getConfirmedNonce(Miner miner) {
+        return confirmedNonces.getOrDefault(miner, 0L);
+    }
+
+    /**
+     * @return nonce the next transaction of the account must carry, following its confirmed and pending ones
+     */
+    public long getNextNonce(Miner miner) {
+        return Math.max(getConfirmedNonce(miner), pendingNonces.getOrDefault(miner, 0L)) + 1;
+    }
+
+    /**
+     * @return copy of confirmed balances of all accounts
+     */
+    public Map<Miner, Long> getConfirmedBalances() {
+        return new HashMap<>(confirmedBalances);
+    }
+
+    /**
+     * @return copy of confirmed nonces of all accounts which have sent anything
+     */
+    public Map<Miner, Long> getConfirmedNonces() {
+        return new HashMap<>(confirmedNonces);
+    }
+
+    /**
+     * Loads confirmed balances and nonces (e.g. from checkpoint), expected to be called on empty ledger
+     */
+    void restoreConfirmed(Map<Miner, Long> balances, Map<Miner, Long> nonces) {
+        confirmedBalances.putAll(balances);
+        confirmedNonces.putAll(nonces);
+    }
+
+    /**
+     * Accounts transaction accepted to the pool
+     */
+    void addPending(Transaction transaction) {
+        apply(pendingDeltas, transaction, 1);
+        pendingNonces.merge(transaction.getSender(), transaction.getNonce(), Math::max);
+    }
+
+    /**
+     * Releases pending delta of transaction dropped from the pool without being confirmed
+     */
+    void release(Transaction transaction) {
+        apply(pendingDeltas, transaction, -1);
+    }
+
+    /**
+     * Accounts transaction appended to the chain, releasing its pending delta if it came from the pool
+     */
+    void confirm(Transaction transaction, boolean wasPending) {
+        apply(confirmedBalances, transaction, 1);
+        if (wasPending) {
+            apply(pendingDeltas, transaction, -1);
+        }
+        if (transaction.getNonce() > 0) {
+            Miner sender = transaction.getSender();
+            long nonce = confirmedNonces.merge(sender, transaction.getNonce(), Math::max);
+            pendingNonces.computeIfPresent(sender, (m, pendingNonce) -> pendingNonce <= nonce ? null : pendingNonce);
+        }
+    }
+
+    /**
+     * Reverts confirmation of transaction from the removed block, the one going back to the pool becomes pending again.
+     * Nonces of the account are sequential, so its confirmed nonce goes back to the one preceding the transaction.
+     */
+    void revert(Transaction transaction, boolean isPending) {
+        apply(confirmedBalances, transaction, -1);
+        if (isPending) {
+            apply(pendingDeltas, transaction, 1);
+        }
+        if (transaction.getNonce() > 0) {
+            long previousNonce = transaction.getNonce() - 1;
+            confirmedNonces.computeIfPresent(transaction.getSender(),
+                    (m, nonce) -> previousNonce == 0 ? null : Math.min(nonce, previousNonce));
+            if (isPending) {
+                pendingNonces.merge(transaction.getSender(), transaction.getNonce(), Math::max);
+            }
+        }
+    }
+
+    private static void apply(Map<Miner, Long> balances, Transaction transaction, int sign) {
+        long amount = sign * transaction.getAmount();
+        adjust(balances, transaction.getSender(), -amount);
+        adjust(balances, transaction.getRecipient(), amount);
+    }
+
+    private static void adjust(Map<Miner, Long> balances, Miner miner, long delta) {
+        balances.compute(miner, (m, balance) -> {
+            long value = (balance == null ? 0L : balance) + delta;
+            return value == 0L ? null : value;
+        });
+    }
+}
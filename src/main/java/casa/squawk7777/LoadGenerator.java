@@ -0,0 +1,227 @@
+package casa.squawk7777;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load test of a single node: random transactions arrive at the target rate regardless of how fast the
+ * blockchain admits them, every arrival is offered through {@link MinerHelper#offerRandomTransaction} by its own
+ * client task, while miners keep extending the chain. Latencies are measured from the scheduled arrival time,
+ * so a stalled admission shows up in percentiles instead of silently lowering the rate.
+ * Configured with system properties:
+ * <pre>
+ * load.tps         target transactions per second (10)
+ * load.accounts    number of accounts besides miners sending and receiving coins (20)
+ * load.miners      number of miners, the only source of new coins (4)
+ * load.difficulty  fixed block complexity, adjusted to block intervals if not given
+ * load.duration    duration of the run in seconds (60)
+ * load.arrival     arrival model: constant or poisson (poisson)
+ * </pre>
+ * Execution mode and signature scheme are taken from the same properties as {@link Application} uses.
+ */
+public class LoadGenerator implements BlockchainListener {
+    private static final Logger log = LoggerFactory.getLogger(LoadGenerator.class);
+    private static final String TPS_PROPERTY = "load.tps";
+    private static final String ACCOUNT_NUMBER_PROPERTY = "load.accounts";
+    private static final String MINER_NUMBER_PROPERTY = "load.miners";
+    private static final String DIFFICULTY_PROPERTY = "load.difficulty";
+    private static final String DURATION_PROPERTY = "load.duration";
+    private static final String ARRIVAL_PROPERTY = "load.arrival";
+    private static final long DRAIN_TIMEOUT_SEC = 10L;
+
+    private final Blockchain blockchain;
+    private final MinerHelper minerHelper;
+    private final ExecutorService clientExecutor;
+    private final double targetTps;
+    private final ArrivalModel arrivalModel;
+    private final SplittableRandom random;
+    private final Map<Integer, Long> unconfirmedArrivals;
+    private final LatencyHistogram admissionLatency;
+    private final LatencyHistogram confirmationLatency;
+    private final LongAdder arrivals;
+    private final LongAdder accepted;
+
+    /**
+     * @param minerHelper    helper which accounts send coins to each other
+     * @param clientExecutor executor running client task of every arrival, it is shut down by the end of the run
+     */
+    public LoadGenerator(Blockchain blockchain, MinerHelper minerHelper, ExecutorService clientExecutor,
+                         double targetTps, ArrivalModel arrivalModel) {
+        this.blockchain = blockchain;
+        this.minerHelper = minerHelper;
+        this.clientExecutor = clientExecutor;
+        this.targetTps = targetTps;
+        this.arrivalModel = arrivalModel;
+        this.random = new SplittableRandom();
+        this.unconfirmedArrivals = new ConcurrentHashMap<>();
+        this.admissionLatency = new LatencyHistogram();
+        this.confirmationLatency = new LatencyHistogram();
+        this.arrivals = new LongAdder();
+        this.accepted = new LongAdder();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        ExecutionMode executionMode = ExecutionMode.of(System.getProperty(Application.EXECUTION_MODE_PROPERTY));
+        SecurityUtil.setDefaultScheme(SignatureScheme.of(System.getProperty(Application.SIGNATURE_SCHEME_PROPERTY)));
+        double targetTps = Double.parseDouble(System.getProperty(TPS_PROPERTY, "10"));
+        int accountNumber = Integer.getInteger(ACCOUNT_NUMBER_PROPERTY, 20);
+        int minerNumber = Integer.getInteger(MINER_NUMBER_PROPERTY, 4);
+        Integer difficulty = Integer.getInteger(DIFFICULTY_PROPERTY);
+        long duration = Long.getLong(DURATION_PROPERTY, 60L);
+        ArrivalModel arrivalModel = ArrivalModel.of(System.getProperty(ARRIVAL_PROPERTY));
+
+        ExecutorService clientExecutor = executionMode.newClientExecutor("client");
+        ExecutorService minerExecutor = executionMode.newClientExecutor("miner");
+        ExecutorService miningPool = ExecutionMode.newHashingPool();
+        Blockchain blockchain = new Blockchain(Integer.MAX_VALUE);
+        if (difficulty != null) {
+            blockchain.setFixedComplexity(difficulty);
+        }
+        blockchain.setOnCloseEventHandler(b -> {
+            minerExecutor.shutdown();
+            miningPool.shutdown();
+        });
+
+        MinerHelper minerHelper = new MinerHelper();
+        for (int i = 0; i < accountNumber; i++) {
+            minerHelper.registerMiner(new Miner(blockchain, "Account #" + i));
+        }
+        int miningParallelism = Math.max(1, Runtime.getRuntime().availableProcessors() / minerNumber);     // pool is shared
+        for (int i = 0; i < minerNumber; i++) {
+            Miner miner = new Miner(blockchain, "Miner #" + i, miningPool, miningParallelism);
+            minerHelper.registerMiner(miner);
+            minerExecutor.execute(miner::mine);
+        }
+
+        log.info("Load test: {} tps ({} arrivals), {} accounts, {} miners, difficulty {}, {} seconds",
+                targetTps, arrivalModel.name().toLowerCase(Locale.ROOT), accountNumber, minerNumber,
+                difficulty == null ? "adaptive" : difficulty, duration);
+        LoadGenerator generator = new LoadGenerator(blockchain, minerHelper, clientExecutor, targetTps, arrivalModel);
+        generator.run(duration, TimeUnit.SECONDS);
+        minerExecutor.awaitTermination(DRAIN_TIMEOUT_SEC, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Generates arrivals on the calling thread for the given time, lets in-flight offers complete,
+     * then closes the blockchain and logs the report
+     */
+    public void run(long duration, TimeUnit unit) throws InterruptedException {
+        long meanGapNanos = Math.round(TimeUnit.SECONDS.toNanos(1) / targetTps);
+        long hashesBefore = blockchain.getMetrics().getHashesComputed();
+        long blocksBefore = blockchain.getMetrics().getBlocksAdded();
+        blockchain.addListener(this);
+
+        long startedAt = System.nanoTime();
+        long finishAt = startedAt + unit.toNanos(duration);
+        long nextArrival = startedAt;
+        try {
+            while (nextArrival < finishAt && !blockchain.isClosed()) {
+                long delay;
+                while ((delay = nextArrival - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(delay);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+                long arrivedAt = nextArrival;
+                arrivals.increment();
+                clientExecutor.execute(() -> offer(arrivedAt));
+                nextArrival += arrivalModel.nextGap(meanGapNanos, random);
+            }
+        } finally {
+            long elapsed = System.nanoTime() - startedAt;
+            clientExecutor.shutdown();
+            clientExecutor.awaitTermination(DRAIN_TIMEOUT_SEC, TimeUnit.SECONDS);
+            blockchain.close();
+            blockchain.removeListener(this);
+            report(elapsed, blockchain.getMetrics().getHashesComputed() - hashesBefore,
+                    blockchain.getMetrics().getBlocksAdded() - blocksBefore);
+        }
+    }
+
+    private void offer(long arrivedAt) {
+        Transaction transaction = minerHelper.offerRandomTransaction(blockchain);
+        long admittedAt = System.nanoTime();
+        admissionLatency.record(admittedAt - arrivedAt);
+        if (transaction != null) {
+            accepted.increment();
+            unconfirmedArrivals.put(transaction.getId(), arrivedAt);
+        }
+    }
+
+    @Override
+    public void onBlockCommitted(Block block) {
+        long committedAt = System.nanoTime();
+        for (Transaction transaction : block.getTransactions()) {
+            Long arrivedAt = unconfirmedArrivals.remove(transaction.getId());
+            if (arrivedAt != null) {
+                confirmationLatency.record(committedAt - arrivedAt);
+            }
+        }
+    }
+
+    private void report(long elapsedNanos, long hashes, long blocks) {
+        double seconds = elapsedNanos / 1e9;
+        long arrivalNumber = arrivals.sum();
+        long acceptedNumber = accepted.sum();
+        Map<String, Long> rejected = blockchain.getMetrics().getTransactionsRejected();
+        long rejectedNumber = rejected.values().stream().mapToLong(Long::longValue).sum();
+        log.info("Arrivals: {} in {} s ({} tps), accepted: {} ({} tps), confirmed: {}, still pending: {}",
+                arrivalNumber, String.format("%.1f", seconds), String.format("%.1f", arrivalNumber / seconds),
+                acceptedNumber, String.format("%.1f", acceptedNumber / seconds),
+                confirmationLatency.getCount(), unconfirmedArrivals.size());
+        log.info("Rejected: {} ({}) {}, skipped for lack of funded sender: {}",
+                rejectedNumber, percentOf(rejectedNumber, arrivalNumber), rejected,
+                Math.max(0, arrivalNumber - acceptedNumber - rejectedNumber));
+        log.info("Admission latency ms: {}", percentiles(admissionLatency));
+        log.info("Confirmation latency ms: {}", percentiles(confirmationLatency));
+        log.info("Blocks: {}, hash rate: {}/s", blocks, Math.round(hashes / seconds));
+    }
+
+    private static String percentOf(long part, long total) {
+        return String.format("%.1f%%", total == 0 ? 0 : part * 100d / total);
+    }
+
+    private static String percentiles(LatencyHistogram histogram) {
+        return String.format("p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f",
+                histogram.getPercentile(50) / 1e6, histogram.getPercentile(90) / 1e6, histogram.getPercentile(99) / 1e6,
+                histogram.getPercentile(99.9) / 1e6, histogram.getMax() / 1e6);
+    }
+
+    /**
+     * Distribution of time gaps between arrivals
+     */
+    public enum ArrivalModel {
+        /**
+         * Arrivals are evenly spaced
+         */
+        CONSTANT,
+        /**
+         * Arrivals form Poisson process: gaps are exponentially distributed, so bursts happen as in real traffic
+         */
+        POISSON;
+
+        /**
+         * @return model by its case-insensitive name or {@link #POISSON} if name is not given
+         */
+        public static ArrivalModel of(String name) {
+            return name == null ? POISSON : valueOf(name.toUpperCase(Locale.ROOT));
+        }
+
+        long nextGap(long meanGapNanos, SplittableRandom random) {
+            if (this == CONSTANT) {
+                return meanGapNanos;
+            }
+            return Math.max(1L, Math.round(-Math.log(1 - random.nextDouble()) * meanGapNanos));
+        }
+    }
+}
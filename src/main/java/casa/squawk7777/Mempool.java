@@ -0,0 +1,162 @@
+package casa.squawk7777;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pool of pending transactions kept as persistent {@link TransactionSet}. Writers are serialized and publish new
+ * version of the set on every change, readers take the current version without locking or copying.
+ * A hash index by ID sits alongside the set, so duplicate checks and lookups on admission stay constant-time
+ * instead of walking the tree.
+ * Transactions which nonce is ahead of the sender's next one are parked aside, out of the set, until the gap is filled:
+ * transactions of one sender may arrive reordered by parallel verification or by gossip.
+ */
+public class Mempool {
+    private final Map<Integer, Transaction> transactionsById;
+    private final Map<Integer, Transaction> parkedById;
+    private final Map<Miner, NavigableMap<Long, Transaction>> parkedBySender;
+    private volatile TransactionSet transactions;
+
+    public Mempool() {
+        this.transactionsById = new ConcurrentHashMap<>();
+        this.parkedById = new ConcurrentHashMap<>();
+        this.parkedBySender = new HashMap<>();
+        this.transactions = TransactionSet.empty();
+    }
+
+    /**
+     * Adds transaction to the pool
+     *
+     * @return false if transaction with the same ID is already present
+     */
+    public synchronized boolean add(Transaction transaction) {
+        if (transactionsById.putIfAbsent(transaction.getId(), transaction) != null) {
+            return false;
+        }
+        transactions = transactions.with(transaction);
+        return true;
+    }
+
+    public boolean containsId(Integer id) {
+        return transactionsById.containsKey(id);
+    }
+
+    public boolean contains(Transaction transaction) {
+        return transaction.equals(transactionsById.get(transaction.getId()));
+    }
+
+    public Transaction get(Integer id) {
+        return transactionsById.get(id);
+    }
+
+    public synchronized boolean remove(Transaction transaction) {
+        if (!transactionsById.remove(transaction.getId(), transaction)) {
+            return false;
+        }
+        transactions = transactions.without(transaction);
+        return true;
+    }
+
+    /**
+     * Removes given transactions (e.g. ones stored in just added block) from the pool
+     *
+     * @return number of transactions actually removed
+     */
+    public synchronized int removeAll(Collection<Transaction> removed) {
+        TransactionSet updated = transactions;
+        int removedNumber = 0;
+        for (Transaction transaction : removed) {
+            if (transactionsById.remove(transaction.getId(), transaction)) {
+                updated = updated.without(transaction);
+                removedNumber++;
+            }
+        }
+        transactions = updated;
+        return removedNumber;
+    }
+
+    public int size() {
+        return transactions.size();
+    }
+
+    /**
+     * Parks transaction which nonce is ahead of the sender's next one
+     *
+     * @return false if transaction with the same ID or another transaction with the same sender and nonce is parked
+     */
+    public synchronized boolean park(Transaction transaction) {
+        NavigableMap<Long, Transaction> parked = parkedBySender.computeIfAbsent(transaction.getSender(), m -> new TreeMap<>());
+        if (parkedById.containsKey(transaction.getId()) || parked.putIfAbsent(transaction.getNonce(), transaction) != null) {
+            return false;
+        }
+        parkedById.put(transaction.getId(), transaction);
+        return true;
+    }
+
+    /**
+     * @return total amount of parked transactions of the sender
+     */
+    public synchronized long getParkedAmount(Miner sender) {
+        NavigableMap<Long, Transaction> parked = parkedBySender.get(sender);
+        return parked == null ? 0L : parked.values().stream().mapToLong(Transaction::getAmount).sum();
+    }
+
+    public boolean isParked(Integer id) {
+        return parkedById.containsKey(id);
+    }
+
+    /**
+     * @return parked transaction of the sender with given nonce or null, it stays parked
+     */
+    public synchronized Transaction getParked(Miner sender, long nonce) {
+        NavigableMap<Long, Transaction> parked = parkedBySender.get(sender);
+        return parked == null ? null : parked.get(nonce);
+    }
+
+    public synchronized void unpark(Transaction transaction) {
+        NavigableMap<Long, Transaction> parked = parkedBySender.get(transaction.getSender());
+        if (parked != null && parked.remove(transaction.getNonce(), transaction)) {
+            parkedById.remove(transaction.getId());
+            if (parked.isEmpty()) {
+                parkedBySender.remove(transaction.getSender());
+            }
+        }
+    }
+
+    /**
+     * Drops parked transactions of the sender which nonces are already taken by the chain
+     *
+     * @return dropped transactions
+     */
+    public synchronized List<Transaction> dropParkedThrough(Miner sender, long confirmedNonce) {
+        NavigableMap<Long, Transaction> parked = parkedBySender.get(sender);
+        if (parked == null) {
+            return List.of();
+        }
+        NavigableMap<Long, Transaction> stale = parked.headMap(confirmedNonce, true);
+        List<Transaction> dropped = new ArrayList<>(stale.values());
+        stale.clear();
+        dropped.forEach(transaction -> parkedById.remove(transaction.getId()));
+        if (parked.isEmpty()) {
+            parkedBySender.remove(sender);
+        }
+        return dropped;
+    }
+
+    public int parkedSize() {
+        return parkedById.size();
+    }
+
+    /**
+     * Returns current immutable version of the pool, no copying involved
+     */
+    public TransactionSet snapshot() {
+        return transactions;
+    }
+}
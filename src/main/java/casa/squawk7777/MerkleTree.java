@@ -0,0 +1,219 @@
+package casa.squawk7777;
+
+import casa.squawk7777.exceptions.BlockchainException;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary Merkle tree over canonically encoded transactions taken in ID order.
+ * <pre>
+ * leaf: SHA-256(0x00 || transaction)
+ * node: SHA-256(0x01 || left || right)
+ * </pre>
+ * Node without a pair is promoted to the upper level as is (instead of being paired with itself), so different
+ * transaction lists can't produce the same root. Root of the empty tree is all zeros.
+ * Appending transaction with the highest ID rehashes only the rightmost path of the tree.
+ * Tree must not be modified while it is shared between threads.
+ */
+public class MerkleTree {
+    public static final int HASH_LENGTH = MiningEngine.HASH_LENGTH;
+    private static final byte LEAF_PREFIX = 0;
+    private static final byte NODE_PREFIX = 1;
+    private static final byte[] EMPTY_ROOT = new byte[HASH_LENGTH];
+
+    private final List<List<byte[]>> levels;            // leaves first, root level last
+    private final Map<Integer, Integer> leafIndexById;
+    private Integer lastId;
+
+    public MerkleTree() {
+        this.levels = new ArrayList<>();
+        this.levels.add(new ArrayList<>());
+        this.leafIndexById = new HashMap<>();
+    }
+
+    private MerkleTree(MerkleTree source) {
+        this.levels = new ArrayList<>(source.levels.size());
+        source.levels.forEach(level -> this.levels.add(new ArrayList<>(level)));
+        this.leafIndexById = new HashMap<>(source.leafIndexById);
+        this.lastId = source.lastId;
+    }
+
+    /**
+     * Builds tree level by level hashing every node once
+     */
+    public static MerkleTree of(Collection<Transaction> transactions) throws BlockchainException {
+        Collection<Transaction> ordered = TransactionSet.inIdOrder(transactions);
+        MerkleTree tree = new MerkleTree();
+        List<byte[]> nodes = tree.levels.get(0);
+        for (Transaction transaction : ordered) {
+            tree.leafIndexById.put(transaction.getId(), nodes.size());
+            tree.lastId = transaction.getId();
+            nodes.add(hashLeaf(transaction));
+        }
+
+        while (nodes.size() > 1) {
+            List<byte[]> parents = new ArrayList<>((nodes.size() + 1) / 2);
+            for (int i = 0; i < nodes.size(); i += 2) {
+                parents.add(i + 1 < nodes.size() ? hashNodes(nodes.get(i), nodes.get(i + 1)) : nodes.get(i));
+            }
+            tree.levels.add(parents);
+            nodes = parents;
+        }
+        return tree;
+    }
+
+    /**
+     * Returns independent copy which may be extended without affecting this tree
+     */
+    public MerkleTree copy() {
+        return new MerkleTree(this);
+    }
+
+    /**
+     * Appends transaction updating only the nodes on the path from the new leaf to the root
+     *
+     * @throws IllegalArgumentException if transaction ID is not greater than IDs already in the tree
+     */
+    public void append(Transaction transaction) throws BlockchainException {
+        if (lastId != null && transaction.getId() <= lastId) {
+            throw new IllegalArgumentException("Transaction #" + transaction.getId() + " doesn't follow #" + lastId);
+        }
+        List<byte[]> leaves = levels.get(0);
+        int index = leaves.size();
+        leafIndexById.put(transaction.getId(), index);
+        lastId = transaction.getId();
+        leaves.add(hashLeaf(transaction));
+
+        for (int level = 0; levels.get(level).size() > 1; level++) {
+            List<byte[]> nodes = levels.get(level);
+            if (level + 1 == levels.size()) {
+                levels.add(new ArrayList<>());
+            }
+            List<byte[]> parents = levels.get(level + 1);
+            int sibling = index ^ 1;
+            byte[] parent;
+            if (sibling >= nodes.size()) {
+                parent = nodes.get(index);
+            } else {
+                parent = (index & 1) == 0 ? hashNodes(nodes.get(index), nodes.get(sibling)) : hashNodes(nodes.get(sibling), nodes.get(index));
+            }
+            index >>>= 1;
+            if (index < parents.size()) {
+                parents.set(index, parent);
+            } else {
+                parents.add(parent);
+            }
+        }
+    }
+
+    /**
+     * Calculates root of this tree extended with given transaction without modifying the tree,
+     * only the nodes on the rightmost path are hashed
+     */
+    public byte[] getRootWith(Transaction transaction) throws BlockchainException {
+        if (lastId != null && transaction.getId() <= lastId) {
+            throw new IllegalArgumentException("Transaction #" + transaction.getId() + " doesn't follow #" + lastId);
+        }
+        byte[] node = hashLeaf(transaction);
+        int index = size();
+        for (int level = 0; Math.max(level < levels.size() ? levels.get(level).size() : 0, index + 1) > 1; level++) {
+            if ((index & 1) == 1) {
+                node = hashNodes(levels.get(level).get(index - 1), node);
+            }
+            index >>>= 1;
+        }
+        return node;
+    }
+
+    public int size() {
+        return levels.get(0).size();
+    }
+
+    public byte[] getRoot() {
+        List<byte[]> top = levels.get(levels.size() - 1);
+        return top.isEmpty() ? EMPTY_ROOT.clone() : top.get(0).clone();
+    }
+
+    /**
+     * Collects sibling hashes on the path from the transaction leaf to the root
+     *
+     * @return proof or null if transaction is not in the tree
+     */
+    public Proof getProof(Transaction transaction) {
+        Integer leafIndex = leafIndexById.get(transaction.getId());
+        if (leafIndex == null) {
+            return null;
+        }
+        List<byte[]> siblings = new ArrayList<>(levels.size());
+        long leftSiblings = 0;
+        int index = leafIndex;
+        for (int level = 0; level < levels.size() - 1; level++) {
+            List<byte[]> nodes = levels.get(level);
+            int sibling = index ^ 1;
+            if (sibling < nodes.size()) {
+                if ((index & 1) == 1) {
+                    leftSiblings |= 1L << siblings.size();
+                }
+                siblings.add(nodes.get(sibling));
+            }
+            index >>>= 1;
+        }
+        return new Proof(siblings, leftSiblings);
+    }
+
+    static byte[] hashLeaf(Transaction transaction) throws BlockchainException {
+        ByteBuffer encoded = ByteBuffer.allocate(1 + BinaryCodec.transactionSize(transaction)).put(LEAF_PREFIX);
+        BinaryCodec.writeTransaction(encoded, transaction);
+        MessageDigest digest = BlockchainUtil.getDigest();
+        digest.update(encoded.flip());
+        return digest.digest();
+    }
+
+    static byte[] hashNodes(byte[] left, byte[] right) throws BlockchainException {
+        MessageDigest digest = BlockchainUtil.getDigest();
+        digest.update(NODE_PREFIX);
+        digest.update(left);
+        digest.update(right);
+        return digest.digest();
+    }
+
+    /**
+     * Inclusion proof of a single transaction: sibling hashes from the leaf level up and their sides.
+     * Its size grows logarithmically with the number of transactions in the block.
+     */
+    public static class Proof {
+        private final List<byte[]> siblings;
+        private final long leftSiblings;        // bit i is set when i-th sibling is the left operand
+
+        public Proof(List<byte[]> siblings, long leftSiblings) {
+            this.siblings = siblings;
+            this.leftSiblings = leftSiblings;
+        }
+
+        public List<byte[]> getSiblings() {
+            return siblings;
+        }
+
+        public long getLeftSiblings() {
+            return leftSiblings;
+        }
+
+        /**
+         * Checks that transaction is committed by given Merkle root (e.g. the one from a block header)
+         */
+        public boolean verify(Transaction transaction, byte[] root) throws BlockchainException {
+            byte[] hash = hashLeaf(transaction);
+            for (int i = 0; i < siblings.size(); i++) {
+                hash = (leftSiblings & (1L << i)) != 0 ? hashNodes(siblings.get(i), hash) : hashNodes(hash, siblings.get(i));
+            }
+            return Arrays.equals(hash, root);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package casa.squawk7777;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically takes metrics snapshot and logs rates, counters and latency histograms
+ */
+public class MetricsReporter implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(MetricsReporter.class);
+
+    private final BlockchainMetrics metrics;
+    private final ScheduledExecutorService scheduler;
+
+    public MetricsReporter(BlockchainMetrics metrics, long period, TimeUnit unit) {
+        this.metrics = metrics;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::report, period, period, unit);
+    }
+
+    public void report() {
+        metrics.snapshot();
+        log.info("Hash rate: {}/s {}, challenges won/expired: {}/{}, blocks: {}, mempool: {}",
+                Math.round(metrics.getHashRate()), metrics.getMinerHashRates(),
+                metrics.getChallengesWon(), metrics.getChallengesExpired(),
+                metrics.getBlocksAdded(), metrics.getMempoolDepth());
+        log.info("Transactions accepted: {}, rejected: {}", metrics.getTransactionsAccepted(), metrics.getTransactionsRejected());
+        log.info("Replay checks skipped by filter: {}, filter false positives: {}",
+                metrics.getReplayChecksSkipped(), metrics.getReplayFilterFalsePositives());
+        log.info("Lock wait [{}], lock hold [{}] ns", metrics.getLockWaitTime(), metrics.getLockHoldTime());
+        log.info("Block interval [{}], admission latency [{}] ns", metrics.getBlockInterval(), metrics.getAdmissionLatency());
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdown();
+    }
+}
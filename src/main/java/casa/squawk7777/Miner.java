@@ -7,7 +7,14 @@ import casa.squawk7777.exceptions.TransactionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
 import java.security.KeyPair;
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class Miner {
     private static final Logger log = LoggerFactory.getLogger(Miner.class);
@@ -15,11 +22,43 @@ public class Miner {
     private final Blockchain blockchain;
     private final String minerTitle;
     private final KeyPair keyPair;
+    private final byte[] address;
+    private final byte[] encodedTitle;
+    private final byte[] encodedPublicKey;
+    private final int addressHash;
+    private final Executor miningPool;
+    private final int parallelism;
 
     public Miner(Blockchain blockchain, String minerTitle) {
+        this(blockchain, minerTitle, null, 1);
+    }
+
+    /**
+     * Creates miner which splits nonce search of every challenge between given number of workers of the mining pool.
+     * Search always runs on the pool, even with a single worker, so the miner's own thread only waits for the result.
+     */
+    public Miner(Blockchain blockchain, String minerTitle, Executor miningPool, int parallelism) {
+        this(blockchain, minerTitle, SecurityUtil.generateKeyPair(), miningPool, parallelism);
+    }
+
+    /**
+     * Creates account known only by its public key (e.g. restored from the block store), it can't sign or mine.
+     * Account without public key gets zero address, which is reserved for blockchain owner.
+     */
+    Miner(Blockchain blockchain, String minerTitle, PublicKey publicKey) {
+        this(blockchain, minerTitle, publicKey == null ? null : new KeyPair(publicKey, null), null, 1);
+    }
+
+    private Miner(Blockchain blockchain, String minerTitle, KeyPair keyPair, Executor miningPool, int parallelism) {
         this.blockchain = blockchain;
         this.minerTitle = minerTitle;
-        this.keyPair = SecurityUtil.generateKeyPair();
+        this.keyPair = keyPair;
+        this.encodedTitle = minerTitle.getBytes(StandardCharsets.UTF_8);
+        this.encodedPublicKey = keyPair == null ? null : keyPair.getPublic().getEncoded();
+        this.address = keyPair == null ? new byte[SecurityUtil.ADDRESS_LENGTH] : SecurityUtil.getAddress(keyPair.getPublic());
+        this.addressHash = Arrays.hashCode(address);
+        this.miningPool = miningPool;
+        this.parallelism = parallelism;
     }
 
     public String getTitle() {
@@ -28,17 +67,106 @@ public class Miner {
 
     public void generateBlock() {
         try {
-            Block block = BlockchainUtil.generateBlock(
-                    blockchain.getChallenge(Miner.this), Thread.currentThread().getName());
+            Blockchain.Challenge challenge = blockchain.getChallenge(Miner.this);
+            Block block = miningPool != null
+                    ? BlockchainUtil.generateBlock(challenge, minerTitle, miningPool, parallelism)
+                    : BlockchainUtil.generateBlock(challenge, minerTitle);
             blockchain.offerBlock(block);
+            blockchain.getMetrics().recordChallengeWon();
         } catch (BlockchainException | TransactionException | InvalidBlockException e) {
             log.debug("Unable to generate block: {}", e.getMessage(), e);
         } catch (ChallengeExpiredException e) {
+            blockchain.getMetrics().recordChallengeExpired();
             log.debug("Challenge expired: {}", e.getMessage());
         }
     }
 
+    /**
+     * Runs mining loop on the calling thread until the blockchain is closed or the thread is interrupted.
+     * Next challenge is taken as soon as the chain head changes, so there is no idle time between blocks.
+     * If the attempt fails while the head stays the same (e.g. block is rejected), loop sleeps until the next change.
+     */
+    public void mine() {
+        ReentrantLock lock = new ReentrantLock();
+        Condition headChanged = lock.newCondition();
+        AtomicLong headVersion = new AtomicLong(blockchain.getSnapshot().getVersion());
+        BlockchainListener listener = new BlockchainListener() {
+            @Override
+            public void onChallengeSuperseded(Blockchain.Snapshot snapshot) {
+                headVersion.accumulateAndGet(snapshot.getVersion(), Math::max);
+                lock.lock();
+                try {
+                    headChanged.signal();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        };
+
+        blockchain.addListener(listener);
+        try {
+            while (!blockchain.isClosed()) {
+                long minedVersion = blockchain.getSnapshot().getVersion();
+                generateBlock();
+
+                lock.lock();
+                try {
+                    while (headVersion.get() <= minedVersion && !blockchain.isClosed()) {
+                        headChanged.await();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            blockchain.removeListener(listener);
+        }
+        log.debug("{} stopped mining", minerTitle);
+    }
+
     protected KeyPair getKeys() {
         return keyPair;
     }
+
+    public PublicKey getPublicKey() {
+        return keyPair == null ? null : keyPair.getPublic();
+    }
+
+    /**
+     * @return account address (hash of the public key), returned array must not be modified
+     */
+    byte[] getAddress() {
+        return address;
+    }
+
+    /**
+     * @return UTF-8 encoded title, returned array must not be modified
+     */
+    byte[] getEncodedTitle() {
+        return encodedTitle;
+    }
+
+    /**
+     * @return X.509 encoded public key or null, returned array must not be modified
+     */
+    byte[] getEncodedPublicKey() {
+        return encodedPublicKey;
+    }
+
+    /**
+     * Accounts are identified by address, so miner restored from storage equals to the one which produced the data
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return Arrays.equals(address, ((Miner) o).address);
+    }
+
+    @Override
+    public int hashCode() {
+        return addressHash;
+    }
 }
@@ -10,15 +10,36 @@ import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.StringJoiner;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.stream.Collectors;
 
 public class MinerHelper {
     private static final Logger log = LoggerFactory.getLogger(MinerHelper.class);
+    private static final int RICH_MINER_CANDIDATES = 10;
     private final List<Miner> minerPool;
+    private final Map<Miner, NonceReservations> reservedNonces;
+    private final Random random;
 
     public MinerHelper() {
-        minerPool = Collections.synchronizedList(new ArrayList<>());
+        this(null);
+    }
+
+    /**
+     * Creates helper which picks miners with given source of randomness, so that seeded one makes
+     * a single-threaded run repeatable
+     *
+     * @param random source of randomness or null to use the calling thread's one
+     */
+    public MinerHelper(Random random) {
+        this.minerPool = Collections.synchronizedList(new ArrayList<>());
+        this.reservedNonces = new ConcurrentHashMap<>();
+        this.random = random;
     }
 
     public static MinerHelper getInstance() {
@@ -30,53 +51,168 @@ public class MinerHelper {
         minerPool.add(miner);
     }
 
-    public void offerRandomTransaction(Blockchain blockchain) {
-        if (!blockchain.isClosed()) {
-            double balance;
-            Miner richMiner;
-            int maxRetries = 10;
-
-            do {
-                richMiner = getRandomMiner();
-            } while ((balance = blockchain.getEstimatedBalance(richMiner)) <= 0 && --maxRetries > 0);
-
-            if (balance > 0) {
-                log.debug("Verified {}'s balance: {} coins", richMiner.getTitle(), balance);
-
-                Miner poorMiner;
-                do {
-                    poorMiner = getRandomMiner();
-                } while (poorMiner.equals(richMiner));
-
-                Integer transactionId = blockchain.getNextTransactionId();
-                Transaction transaction = new Transaction(transactionId,
-                        richMiner,
-                        poorMiner,
-                        Math.round(balance / 2));
-
-                try {
-                    SecurityUtil.sign(transaction, richMiner.getKeys());
-                    log.debug("New transaction: {} sent {} coins to {}",
-                            transaction.getSender().getTitle(),
-                            transaction.getAmount(),
-                            transaction.getRecipient().getTitle());
-
-                    blockchain.offerTransaction(transaction);
-                } catch (BlockchainException | GeneralSecurityException | InvalidSignatureException | TransactionException e) {
-                    log.debug("Unable to generate and offer a random transaction: {}", e.getMessage(), e);
+    /**
+     * Generates random transaction and offers it to the blockchain on the calling thread
+     *
+     * @return accepted transaction or null if it was rejected or there was nothing to transfer
+     */
+    public Transaction offerRandomTransaction(Blockchain blockchain) {
+        Transaction transaction = createRandomTransaction(blockchain);
+        if (transaction != null) {
+            try {
+                blockchain.offerTransaction(transaction);
+                releaseNonce(transaction, true);
+                return transaction;
+            } catch (BlockchainException | GeneralSecurityException | InvalidSignatureException | TransactionException e) {
+                releaseNonce(transaction, false);
+                log.debug("Unable to generate and offer a random transaction: {}", e.getMessage(), e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Simulates client which keeps submitting random transactions, waiting for admission result of each one,
+     * until the blockchain is closed or the thread is interrupted
+     */
+    public void runClient(Blockchain blockchain, TransactionPipeline pipeline, long thinkTimeMs) {
+        try {
+            while (!blockchain.isClosed()) {
+                Transaction transaction = createRandomTransaction(blockchain);
+                if (transaction != null) {
+                    boolean isAccepted = false;
+                    try {
+                        pipeline.submit(transaction).get();
+                        isAccepted = true;
+                    } catch (ExecutionException e) {
+                        log.debug("Random transaction #{} rejected: {}", transaction.getId(), e.getCause().getMessage());
+                    } finally {
+                        releaseNonce(transaction, isAccepted);
+                    }
                 }
+                Thread.sleep(thinkTimeMs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Creates signed transaction which moves half of the estimated balance between two random miners
+     *
+     * @return transaction or null if blockchain is closed or there are no two miners to transfer coins between
+     */
+    private Transaction createRandomTransaction(Blockchain blockchain) {
+        if (blockchain.isClosed() || minerPool.size() < 2) {
+            return null;
+        }
+        List<Miner> candidates = new ArrayList<>(RICH_MINER_CANDIDATES);
+        for (int i = 0; i < RICH_MINER_CANDIDATES; i++) {
+            candidates.add(getRandomMiner());
+        }
+        AccountBalances balances = blockchain.getEstimatedBalances(candidates);
+        Miner richMiner = null;
+        for (Miner candidate : candidates) {
+            if (balances.get(candidate) > 0) {
+                richMiner = candidate;
+                break;
+            }
+        }
+        if (richMiner == null) {
+            return null;
+        }
+        double balance = balances.get(richMiner);
+        log.debug("Verified {}'s balance: {} coins", richMiner.getTitle(), balance);
+
+        Miner poorMiner;
+        do {
+            poorMiner = getRandomMiner();
+        } while (poorMiner.equals(richMiner));
+
+        Integer transactionId = blockchain.getNextTransactionId();
+        Transaction transaction = new Transaction(transactionId,
+                richMiner,
+                poorMiner,
+                Math.round(balance / 2),
+                reserveNonce(blockchain, richMiner));
+
+        try {
+            SecurityUtil.sign(transaction, richMiner.getKeys());
+        } catch (GeneralSecurityException e) {
+            releaseNonce(transaction, false);
+            log.debug("Unable to sign a random transaction: {}", e.getMessage(), e);
+            return null;
+        }
+        log.debug("New transaction: {} sent {} coins to {}",
+                transaction.getSender().getTitle(),
+                transaction.getAmount(),
+                transaction.getRecipient().getTitle());
+        return transaction;
+    }
+
+    /**
+     * Atomically reserves nonce for the sender's new transaction, so that transactions created by concurrent clients
+     * never share one. Nonce must be released once admission of its transaction is over, whatever the result.
+     */
+    private long reserveNonce(Blockchain blockchain, Miner sender) {
+        return reservedNonces.computeIfAbsent(sender, m -> new NonceReservations()).reserve(blockchain, sender);
+    }
+
+    private void releaseNonce(Transaction transaction, boolean isAccepted) {
+        reservedNonces.get(transaction.getSender()).release(transaction.getNonce(), isAccepted);
+    }
+
+    /**
+     * Nonces of the sender which transactions are being admitted or were accepted ahead of the chain's next nonce
+     * (parked until the gap is filled). New transaction takes the lowest nonce not held by either, so the nonce of
+     * a rejected transaction is reused first and a gap is filled rather than extended.
+     */
+    private static class NonceReservations {
+        private final NavigableSet<Long> inFlight;
+        private final NavigableSet<Long> accepted;
+
+        private NonceReservations() {
+            this.inFlight = new TreeSet<>();
+            this.accepted = new TreeSet<>();
+        }
+
+        /**
+         * Chain's next nonce is read under the same monitor as releases, so a released nonce is seen taken by then.
+         * Accepted transaction holding the chain's next nonce was dropped from the parked ones, so the nonce is free.
+         */
+        private synchronized long reserve(Blockchain blockchain, Miner sender) {
+            long nextNonce = blockchain.getNextNonce(sender);
+            accepted.headSet(nextNonce, true).clear();
+            long nonce = nextNonce;
+            while (inFlight.contains(nonce) || accepted.contains(nonce)) {
+                nonce++;
+            }
+            inFlight.add(nonce);
+            return nonce;
+        }
+
+        private synchronized void release(long nonce, boolean isAccepted) {
+            if (inFlight.remove(nonce) && isAccepted) {
+                accepted.add(nonce);
             }
         }
     }
 
+    /**
+     * Reports confirmed balances of all registered miners, taken at the same head version
+     */
     public String getBalances(Blockchain blockchain) {
-        return minerPool.stream()
-                .map(m -> m.getTitle() + " = " + blockchain.getConfirmedBalance(m))
-                .collect(Collectors.joining("\n"));
+        List<Miner> miners;
+        synchronized (minerPool) {
+            miners = new ArrayList<>(minerPool);
+        }
+        StringJoiner report = new StringJoiner("\n");
+        blockchain.getConfirmedBalances(miners).forEach((miner, balance) -> report.add(miner.getTitle() + " = " + balance));
+        return report.toString();
     }
 
     private Miner getRandomMiner() {
-        int rnd = ThreadLocalRandom.current().nextInt(0, minerPool.size());
+        int rnd = (random == null ? ThreadLocalRandom.current() : random).nextInt(minerPool.size());
         return minerPool.get(rnd);
     }
 
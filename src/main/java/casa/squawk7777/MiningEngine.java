@@ -0,0 +1,108 @@
+package casa.squawk7777;
+
+import casa.squawk7777.exceptions.BlockchainException;
+
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.MessageDigest;
+
+/**
+ * Byte level proof-of-work hashing. Fixed part of the block header
+ * {@code [complexity][previous hash][Merkle root]} is hashed once per challenge,
+ * every attempt hashes {@code [header digest][nonce]} (single SHA-256 compression), only rewriting trailing nonce bytes
+ * and checking leading zero nibbles of the raw digest without any allocation.
+ */
+public class MiningEngine {
+    public static final int HASH_LENGTH = 32;
+
+    private final byte[] prefix;
+    private final int complexity;
+
+    public MiningEngine(byte[] merkleRoot, int complexity, String lastHash) throws BlockchainException {
+        this.prefix = serializePrefix(merkleRoot, complexity, lastHash);
+        this.complexity = complexity;
+    }
+
+    public static MiningEngine forChallenge(Blockchain.Challenge challenge) throws BlockchainException {
+        return new MiningEngine(BlockchainUtil.fromHex(challenge.getMerkleRoot()), challenge.getComplexity(), challenge.getLastHash());
+    }
+
+    public int getComplexity() {
+        return complexity;
+    }
+
+    /**
+     * Creates search state bound to the calling thread's digest; must not be shared between threads
+     */
+    public Search newSearch() throws BlockchainException {
+        return new Search(BlockchainUtil.getDigest(), prefix, complexity);
+    }
+
+    private static byte[] serializePrefix(byte[] merkleRoot, int complexity, String lastHash) throws BlockchainException {
+        MessageDigest digest = BlockchainUtil.getDigest();
+        digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(complexity).array());
+        digest.update(BlockchainUtil.fromHex(lastHash));
+        digest.update(merkleRoot);
+        return digest.digest();
+    }
+
+    /**
+     * Checks that hex representation of the hash starts with given number of zero characters
+     */
+    public static boolean hasLeadingZeroNibbles(byte[] hash, int nibbles) {
+        int fullBytes = nibbles >>> 1;
+        for (int i = 0; i < fullBytes; i++) {
+            if (hash[i] != 0) {
+                return false;
+            }
+        }
+        return (nibbles & 1) == 0 || (hash[fullBytes] & 0xF0) == 0;
+    }
+
+    public static class Search {
+        private final MessageDigest digest;
+        private final byte[] input;
+        private final byte[] hash;
+        private final int nonceOffset;
+        private final int complexity;
+
+        private Search(MessageDigest digest, byte[] prefix, int complexity) {
+            this.digest = digest;
+            this.nonceOffset = prefix.length;
+            this.input = new byte[prefix.length + Long.BYTES];
+            this.hash = new byte[HASH_LENGTH];
+            this.complexity = complexity;
+            System.arraycopy(prefix, 0, input, 0, prefix.length);
+        }
+
+        /**
+         * Hashes header with given nonce
+         *
+         * @return true if resulting hash meets challenge complexity
+         */
+        public boolean tryNonce(long nonce) {
+            for (int i = Long.BYTES - 1; i >= 0; i--) {
+                input[nonceOffset + i] = (byte) nonce;
+                nonce >>>= 8;
+            }
+            digest.update(input, 0, input.length);
+            try {
+                digest.digest(hash, 0, HASH_LENGTH);
+            } catch (DigestException e) {
+                throw new IllegalStateException(TextConstants.UNABLE_TO_CALCULATE_HASH, e);
+            }
+            return hasLeadingZeroNibbles(hash, complexity);
+        }
+
+        /**
+         * @return raw hash of the last attempt, buffer is reused by subsequent attempts
+         */
+        public byte[] getHash() {
+            return hash;
+        }
+
+        public String getHashString() {
+            return BlockchainUtil.toHex(hash);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package casa.squawk7777;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Probabilistic set of long keys which grows with its content. A miss is definite, a hit is probable and must be
+ * confirmed by an exact lookup. Keys are added to the newest slice, once it holds its capacity a slice of four times the
+ * capacity and halved false positive rate is started, so the compound rate stays below twice the initial one
+ * however many keys are added. Keys can't be removed, a removed key only turns into a false positive.
+ * Mutations are expected from a single thread at a time, lookups are lock-free.
+ */
+public class ScalableBloomFilter {
+    private static final double LN2 = Math.log(2);
+    private static final double TIGHTENING_RATIO = 0.5;
+    private static final int GROWTH_FACTOR = 4;
+
+    private final List<Slice> slices;
+    private volatile long size;
+
+    /**
+     * @param initialCapacity   number of keys the first slice holds
+     * @param falsePositiveRate false positive rate of the first slice
+     */
+    public ScalableBloomFilter(int initialCapacity, double falsePositiveRate) {
+        if (initialCapacity <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException(TextConstants.INVALID_BLOOM_FILTER_PARAMETERS);
+        }
+        this.slices = new CopyOnWriteArrayList<>();
+        this.slices.add(new Slice(initialCapacity, falsePositiveRate));
+    }
+
+    void add(long key) {
+        Slice slice = slices.get(slices.size() - 1);
+        if (slice.count >= slice.capacity) {
+            slice = new Slice((int) Math.min(Integer.MAX_VALUE, (long) slice.capacity * GROWTH_FACTOR), slice.falsePositiveRate * TIGHTENING_RATIO);
+            slices.add(slice);
+        }
+        long hash = mix(key);
+        slice.add(hash, mix(hash));
+        size++;
+    }
+
+    /**
+     * @return false if the key was definitely never added
+     */
+    public boolean mightContain(long key) {
+        long hash = mix(key);
+        long secondHash = mix(hash);
+        for (Slice slice : slices) {
+            if (slice.mightContain(hash, secondHash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return number of keys added
+     */
+    public long size() {
+        return size;
+    }
+
+    public long getBitCount() {
+        long bits = 0;
+        for (Slice slice : slices) {
+            bits += slice.bitCount;
+        }
+        return bits;
+    }
+
+    /**
+     * SplitMix64 finalizer, makes hashes of sequential or strided keys independent. Applied to its own output it gives
+     * the second hash, independent of the first one.
+     */
+    private static long mix(long key) {
+        long z = key + 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Blocked Bloom filter sized for its capacity and rate: the high half of the first hash picks a block of one cache
+     * line and all probes, derived from the low half of the first hash and from the second hash by double hashing,
+     * fall into it, so a lookup touches a single cache line per slice. Bits are published through an atomic array.
+     */
+    private static class Slice {
+        private static final int WORDS_PER_BLOCK = 8;
+        private static final int BITS_PER_BLOCK = WORDS_PER_BLOCK * Long.SIZE;
+        private static final double BLOCKING_OVERHEAD = 1.2;
+
+        private final int capacity;
+        private final double falsePositiveRate;
+        private final long bitCount;
+        private final int blockCount;
+        private final int hashCount;
+        private final AtomicLongArray words;
+        private int count;
+
+        private Slice(int capacity, double falsePositiveRate) {
+            this.capacity = capacity;
+            this.falsePositiveRate = falsePositiveRate;
+            double bits = -capacity * Math.log(falsePositiveRate) / (LN2 * LN2) * BLOCKING_OVERHEAD;
+            int minBlockCount = Math.toIntExact(Math.max(1, (long) Math.ceil(bits / BITS_PER_BLOCK)));
+            this.blockCount = Integer.bitCount(minBlockCount) == 1 ? minBlockCount : Integer.highestOneBit(minBlockCount) << 1;
+            this.bitCount = (long) blockCount * BITS_PER_BLOCK;
+            this.hashCount = Math.max(1, (int) Math.round(-Math.log(falsePositiveRate) / LN2));
+            this.words = new AtomicLongArray(blockCount * WORDS_PER_BLOCK);
+        }
+
+        private void add(long hash, long secondHash) {
+            int base = blockOffset(hash);
+            int h1 = (int) hash;
+            int h2 = (int) secondHash | 1;
+            for (int i = 0; i < hashCount; i++) {
+                int bit = (h1 + i * h2) & (BITS_PER_BLOCK - 1);
+                int word = base + (bit >>> 6);
+                long mask = 1L << bit;
+                long current = words.get(word);
+                if ((current & mask) == 0) {
+                    words.set(word, current | mask);
+                }
+            }
+            count++;
+        }
+
+        private boolean mightContain(long hash, long secondHash) {
+            int base = blockOffset(hash);
+            int h1 = (int) hash;
+            int h2 = (int) secondHash | 1;
+            for (int i = 0; i < hashCount; i++) {
+                int bit = (h1 + i * h2) & (BITS_PER_BLOCK - 1);
+                if ((words.get(base + (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Block count is a power of two, so picking a block takes a mask of the hash bits not used by probes
+         */
+        private int blockOffset(long hash) {
+            return ((int) (hash >>> Integer.SIZE) & (blockCount - 1)) * WORDS_PER_BLOCK;
+        }
+    }
+}
@@ -1,50 +1,84 @@
 package casa.squawk7777;
 
+import casa.squawk7777.exceptions.BlockchainException;
 import casa.squawk7777.exceptions.InvalidSignatureException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
 import java.security.KeyPair;
-import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
-import java.security.Signature;
+import java.security.PublicKey;
+import java.util.Arrays;
 import java.util.Base64;
 
 public class SecurityUtil {
     private static final Logger log = LoggerFactory.getLogger(SecurityUtil.class);
-    private static final String DEFAULT_ALGORITHM = "RSA";
-    private static final Integer DEFAULT_KEY_SIZE = 1024;
+    public static final int ADDRESS_LENGTH = 32;
+
+    private static volatile SignatureScheme defaultScheme = SignatureScheme.RSA;
 
     private SecurityUtil() {}
 
+    /**
+     * Sets scheme of the keys generated for new accounts, existing accounts keep their schemes
+     */
+    public static void setDefaultScheme(SignatureScheme scheme) {
+        defaultScheme = scheme;
+    }
+
+    public static SignatureScheme getDefaultScheme() {
+        return defaultScheme;
+    }
+
+    /**
+     * Signs the digest with the scheme of the key pair
+     */
     public static void sign(Signable signable, KeyPair keyPair) throws GeneralSecurityException {
-        Signature signature = Signature.getInstance("SHA256withRSA");
-        signature.initSign(keyPair.getPrivate());
-        signature.update(signable.getDigest().getBytes(StandardCharsets.UTF_8));
-        byte[] dataSignature = signature.sign();
+        byte[] dataSignature = SignatureScheme.forKey(keyPair.getPublic()).sign(signable.getDigest(), keyPair.getPrivate());
         if (log.isDebugEnabled()) {
             log.trace("Generated data signature: {}", Base64.getEncoder().encodeToString(dataSignature));
         }
         signable.sign(dataSignature, keyPair.getPublic());
     }
 
+    /**
+     * Verifies the signature with the scheme of the signer's public key. The key travels with the data, so it must
+     * also belong to the expected signer: otherwise anyone could sign a spend from somebody else's account.
+     */
     public static void verifySignature(Signable signable) throws GeneralSecurityException, InvalidSignatureException {
-        Signature signature = Signature.getInstance("SHA256withRSA");
-        signature.initVerify(signable.getPublicKey());
-        signature.update(signable.getDigest().getBytes(StandardCharsets.UTF_8));
-        if (!signature.verify(signable.getSignature())) {
+        PublicKey publicKey = signable.getPublicKey();
+        if (publicKey == null || signable.getSignature() == null) {
+            throw new InvalidSignatureException(TextConstants.SIGNATURE_IS_INVALID);
+        }
+        if (!Arrays.equals(getAddress(publicKey), signable.getSignerAddress())) {
+            throw new InvalidSignatureException(TextConstants.SIGNER_IS_NOT_SENDER);
+        }
+        if (!SignatureScheme.forKey(publicKey).verify(signable.getDigest(), signable.getSignature(), publicKey)) {
             throw new InvalidSignatureException(TextConstants.SIGNATURE_IS_INVALID);
         }
         log.debug("Data signature successfully verified.");
     }
 
+    /**
+     * Derives account address as SHA-256 hash of the encoded public key, cached per key by its scheme
+     *
+     * @return address, returned array must not be modified
+     */
+    public static byte[] getAddress(PublicKey publicKey) {
+        try {
+            return SignatureScheme.forKey(publicKey).getAddress(publicKey);
+        } catch (NoSuchAlgorithmException | BlockchainException e) {
+            throw new RuntimeException(TextConstants.UNABLE_TO_CALCULATE_HASH);
+        }
+    }
+
+    /**
+     * Generates key pair of the default scheme
+     */
     public static KeyPair generateKeyPair() {
         try {
-            KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance(DEFAULT_ALGORITHM);
-            keyPairGenerator.initialize(DEFAULT_KEY_SIZE);
-            KeyPair keyPair = keyPairGenerator.generateKeyPair();
+            KeyPair keyPair = defaultScheme.generateKeyPair();
             log.trace("Generated KeyPair with Public key: {}", keyPair.getPublic());
             return keyPair;
         } catch (NoSuchAlgorithmException e) {
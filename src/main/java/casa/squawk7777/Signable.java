@@ -3,11 +3,16 @@ package casa.squawk7777;
 import java.security.PublicKey;
 
 public interface Signable {
-    String getDigest();
+    byte[] getDigest();
 
     byte[] getSignature();
 
     PublicKey getPublicKey();
 
+    /**
+     * @return address of the account which must have signed the data, signer key must hash to it
+     */
+    byte[] getSignerAddress();
+
     void sign(byte[] signature, PublicKey publicKey);
 }
@@ -0,0 +1,145 @@
+package casa.squawk7777;
+
+import casa.squawk7777.exceptions.BlockchainException;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Signature algorithm of an account. Scheme of the signer is recognized by its public key, so accounts of different
+ * schemes coexist in one chain. Looking up {@link Signature} is expensive, so every thread reuses its own instance
+ * per scheme; decoded public keys and their addresses are cached, as the same accounts sign transaction after transaction.
+ */
+public enum SignatureScheme {
+    /**
+     * 1024-bit RSA keys, slow key generation and large keys and signatures, but the fastest verification
+     */
+    RSA("RSA", "SHA256withRSA", 1024),
+    /**
+     * ECDSA over P-256 curve
+     */
+    ECDSA("EC", "SHA256withECDSA", 256),
+    /**
+     * EdDSA over Curve25519, cheap key generation and small keys and signatures, but verification is much slower
+     * than RSA on this JDK's pure Java implementation; requires JDK 15 or later
+     */
+    ED25519("Ed25519", "Ed25519", 0);
+
+    private static final String EDDSA_KEY_ALGORITHM = "EdDSA";
+    private static final int MAX_CACHED_KEYS = 100_000;
+
+    private final String keyAlgorithm;
+    private final String signatureAlgorithm;
+    private final int keySize;
+    private final ThreadLocal<Signature> signatures;
+    private final Map<ByteBuffer, PublicKey> decodedKeys;
+    private final Map<PublicKey, byte[]> addresses;
+
+    SignatureScheme(String keyAlgorithm, String signatureAlgorithm, int keySize) {
+        this.keyAlgorithm = keyAlgorithm;
+        this.signatureAlgorithm = signatureAlgorithm;
+        this.keySize = keySize;
+        this.signatures = new ThreadLocal<>();
+        this.decodedKeys = new ConcurrentHashMap<>();
+        this.addresses = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @return scheme by its case-insensitive name or {@link #RSA} if name is not given
+     */
+    public static SignatureScheme of(String name) {
+        return name == null ? RSA : valueOf(name.toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Recognizes scheme of the key, Ed25519 keys report generic EdDSA algorithm
+     */
+    public static SignatureScheme forKey(PublicKey publicKey) throws NoSuchAlgorithmException {
+        String algorithm = publicKey.getAlgorithm();
+        for (SignatureScheme scheme : values()) {
+            if (scheme.keyAlgorithm.equals(algorithm)) {
+                return scheme;
+            }
+        }
+        if (EDDSA_KEY_ALGORITHM.equals(algorithm)) {
+            return ED25519;
+        }
+        throw new NoSuchAlgorithmException(TextConstants.UNSUPPORTED_KEY_ALGORITHM + ": " + algorithm);
+    }
+
+    public KeyPair generateKeyPair() throws NoSuchAlgorithmException {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance(keyAlgorithm);
+        if (keySize > 0) {
+            keyPairGenerator.initialize(keySize);
+        }
+        return keyPairGenerator.generateKeyPair();
+    }
+
+    public byte[] sign(byte[] data, PrivateKey privateKey) throws GeneralSecurityException {
+        Signature signature = getSignature();
+        signature.initSign(privateKey);
+        signature.update(data);
+        return signature.sign();
+    }
+
+    public boolean verify(byte[] data, byte[] signatureBytes, PublicKey publicKey) throws GeneralSecurityException {
+        Signature signature = getSignature();
+        signature.initVerify(publicKey);
+        signature.update(data);
+        return signature.verify(signatureBytes);
+    }
+
+    /**
+     * Restores public key from its X.509 encoded form, every distinct key is decoded only once
+     */
+    public PublicKey decodePublicKey(byte[] encodedKey) throws GeneralSecurityException {
+        ByteBuffer cacheKey = ByteBuffer.wrap(encodedKey);
+        PublicKey publicKey = decodedKeys.get(cacheKey);
+        if (publicKey == null) {
+            publicKey = KeyFactory.getInstance(keyAlgorithm).generatePublic(new X509EncodedKeySpec(encodedKey));
+            if (decodedKeys.size() >= MAX_CACHED_KEYS) {
+                decodedKeys.clear();
+            }
+            decodedKeys.put(cacheKey, publicKey);
+        }
+        return publicKey;
+    }
+
+    /**
+     * Derives account address as SHA-256 hash of the encoded key with the calling thread's digest, every distinct key
+     * is hashed only once
+     *
+     * @return address, returned array must not be modified
+     */
+    public byte[] getAddress(PublicKey publicKey) throws BlockchainException {
+        byte[] address = addresses.get(publicKey);
+        if (address == null) {
+            address = BlockchainUtil.getDigest().digest(publicKey.getEncoded());
+            if (addresses.size() >= MAX_CACHED_KEYS) {
+                addresses.clear();
+            }
+            addresses.put(publicKey, address);
+        }
+        return address;
+    }
+
+    private Signature getSignature() throws NoSuchAlgorithmException {
+        Signature signature = signatures.get();
+        if (signature == null) {
+            signature = Signature.getInstance(signatureAlgorithm);
+            signatures.set(signature);
+        }
+        return signature;
+    }
+}
@@ -0,0 +1,56 @@
+package casa.squawk7777;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Clock which time moves only when it is advanced explicitly, so code reading it runs against simulated time.
+ * Copies made for other zones share the same time.
+ */
+public class SimulatedClock extends Clock {
+    private final AtomicLong millis;
+    private final ZoneId zone;
+
+    public SimulatedClock(long startMillis) {
+        this(new AtomicLong(startMillis), ZoneOffset.UTC);
+    }
+
+    private SimulatedClock(AtomicLong millis, ZoneId zone) {
+        this.millis = millis;
+        this.zone = zone;
+    }
+
+    /**
+     * Moves time forward to the given moment, earlier moments are ignored
+     */
+    public void advanceTo(long targetMillis) {
+        millis.accumulateAndGet(targetMillis, Math::max);
+    }
+
+    public void advanceBy(long deltaMillis) {
+        millis.addAndGet(Math.max(0, deltaMillis));
+    }
+
+    @Override
+    public long millis() {
+        return millis.get();
+    }
+
+    @Override
+    public Instant instant() {
+        return Instant.ofEpochMilli(millis.get());
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return new SimulatedClock(millis, zone);
+    }
+}
@@ -0,0 +1,205 @@
+package casa.squawk7777;
+
+import casa.squawk7777.exceptions.BlockchainException;
+import casa.squawk7777.exceptions.InvalidBlockException;
+import casa.squawk7777.exceptions.TransactionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Discrete-event simulation of a single node against simulated time. Nobody hashes: time the network needs to solve
+ * a challenge of complexity {@code c} is drawn from exponential distribution with mean {@code 16^c} hashes divided by
+ * the network hash rate, and the winning miner's block carries a random nonce. Transactions arrive as Poisson process
+ * and are offered through {@link MinerHelper}. Events run on a single thread in time order and every random choice
+ * comes from the seed, so a run is repeatable and thousands of blocks take seconds of wall-clock time.
+ * Configured with system properties:
+ * <pre>
+ * simulation.seed      seed of all random choices (1)
+ * simulation.blocks    number of blocks to simulate (1000)
+ * simulation.miners    number of miners (4)
+ * simulation.hashrate  hash rate of every miner per second (100000)
+ * simulation.tps       transactions arriving per simulated second (1)
+ * simulation.accounts  number of accounts besides miners (10)
+ * </pre>
+ */
+public class Simulation {
+    private static final Logger log = LoggerFactory.getLogger(Simulation.class);
+    private static final String SEED_PROPERTY = "simulation.seed";
+    private static final String BLOCK_NUMBER_PROPERTY = "simulation.blocks";
+    private static final String MINER_NUMBER_PROPERTY = "simulation.miners";
+    private static final String HASH_RATE_PROPERTY = "simulation.hashrate";
+    private static final String TPS_PROPERTY = "simulation.tps";
+    private static final String ACCOUNT_NUMBER_PROPERTY = "simulation.accounts";
+    private static final double HASHES_PER_COMPLEXITY_STEP = 16;
+
+    private final Blockchain blockchain;
+    private final SimulatedClock clock;
+    private final MinerHelper minerHelper;
+    private final List<Miner> miners;
+    private final SplittableRandom random;
+    private final double networkHashRate;
+    private final double tps;
+    private final PriorityQueue<Event> events;
+    private long eventCounter;
+
+    /**
+     * @param blockchain      blockchain created with the given clock
+     * @param minerHelper     helper with seeded randomness offering transactions between registered accounts
+     * @param miners          miners competing for blocks, each one has the same hash rate
+     * @param hashRate        hash rate of every miner per second
+     * @param tps             transactions arriving per simulated second
+     */
+    public Simulation(Blockchain blockchain, SimulatedClock clock, MinerHelper minerHelper, List<Miner> miners,
+                      double hashRate, double tps, long seed) {
+        this.blockchain = blockchain;
+        this.clock = clock;
+        this.minerHelper = minerHelper;
+        this.miners = miners;
+        this.random = new SplittableRandom(seed);
+        this.networkHashRate = hashRate * miners.size();
+        this.tps = tps;
+        this.events = new PriorityQueue<>();
+        blockchain.setProofOfWorkSimulated(true);
+    }
+
+    public static void main(String[] args) {
+        long seed = Long.getLong(SEED_PROPERTY, 1L);
+        int blockNumber = Integer.getInteger(BLOCK_NUMBER_PROPERTY, 1000);
+        int minerNumber = Integer.getInteger(MINER_NUMBER_PROPERTY, 4);
+        double hashRate = Double.parseDouble(System.getProperty(HASH_RATE_PROPERTY, "100000"));
+        double tps = Double.parseDouble(System.getProperty(TPS_PROPERTY, "1"));
+        int accountNumber = Integer.getInteger(ACCOUNT_NUMBER_PROPERTY, 10);
+        SecurityUtil.setDefaultScheme(SignatureScheme.of(System.getProperty(Application.SIGNATURE_SCHEME_PROPERTY)));
+
+        SimulatedClock clock = new SimulatedClock(0L);
+        Blockchain blockchain = new Blockchain(blockNumber, new InMemoryBlockStore(), Blockchain.DEFAULT_MAX_BLOCK_TRANSACTIONS,
+                Blockchain.DEFAULT_MAX_BLOCK_BYTES, null, clock);
+        blockchain.setOnCloseEventHandler(b -> log.info("Simulated chain is full"));
+        MinerHelper minerHelper = new MinerHelper(new Random(seed));
+        List<Miner> miners = new ArrayList<>();
+        for (int i = 0; i < minerNumber; i++) {
+            Miner miner = new Miner(blockchain, "Miner #" + i);
+            miners.add(miner);
+            minerHelper.registerMiner(miner);
+        }
+        for (int i = 0; i < accountNumber; i++) {
+            minerHelper.registerMiner(new Miner(blockchain, "Account #" + i));
+        }
+
+        new Simulation(blockchain, clock, minerHelper, miners, hashRate, tps, seed).run();
+    }
+
+    /**
+     * Processes events until the chain reaches its capacity, then logs the report
+     */
+    public void run() {
+        long startedAt = System.nanoTime();
+        long startMillis = clock.millis();
+        Map<Integer, Integer> blocksByComplexity = new TreeMap<>();
+        LatencyHistogram blockIntervals = new LatencyHistogram();
+        long[] lastBlockAt = {startMillis};
+        int[] confirmedTransactions = {0};
+        BlockchainListener listener = new BlockchainListener() {
+            @Override
+            public void onBlockCommitted(Block block) {
+                blocksByComplexity.merge(block.getComplexity(), 1, Integer::sum);
+                blockIntervals.record(clock.millis() - lastBlockAt[0]);
+                lastBlockAt[0] = clock.millis();
+                confirmedTransactions[0] += block.getTransactions().size() - 1;
+            }
+        };
+        blockchain.addListener(listener);
+
+        scheduleBlock();
+        if (tps > 0) {
+            scheduleArrival();
+        }
+        while (!blockchain.isClosed() && !events.isEmpty()) {
+            Event event = events.poll();
+            clock.advanceTo(event.time);
+            event.action.run();
+        }
+        blockchain.removeListener(listener);
+
+        double wallSeconds = (System.nanoTime() - startedAt) / 1e9;
+        double simulatedSeconds = (clock.millis() - startMillis) / 1e3;
+        int blocks = blockchain.getLastBlock().getId();
+        log.info("Simulated {} blocks in {} s of simulated time ({} s of wall-clock time, {} blocks/s)",
+                blocks, String.format("%.0f", simulatedSeconds), String.format("%.1f", wallSeconds),
+                String.format("%.0f", blocks / wallSeconds));
+        log.info("Block interval s: mean={} p50={} p99={} max={}, blocks by complexity: {}",
+                String.format("%.1f", blockIntervals.getMean() / 1e3), blockIntervals.getPercentile(50) / 1e3,
+                blockIntervals.getPercentile(99) / 1e3, blockIntervals.getMax() / 1e3, blocksByComplexity);
+        log.info("Transactions confirmed: {} ({} tps of simulated time), accepted: {}, rejected: {}",
+                confirmedTransactions[0], String.format("%.2f", confirmedTransactions[0] / simulatedSeconds),
+                blockchain.getMetrics().getTransactionsAccepted(), blockchain.getMetrics().getTransactionsRejected());
+    }
+
+    /**
+     * Schedules the moment the network solves the current challenge. Solving is memoryless,
+     * so the challenge superseded by a block is simply replaced with the next one.
+     */
+    private void scheduleBlock() {
+        double meanSeconds = Math.pow(HASHES_PER_COMPLEXITY_STEP, blockchain.getSnapshot().getComplexity()) / networkHashRate;
+        schedule(exponential(TimeUnit.SECONDS.toMillis(1) * meanSeconds), this::commitBlock);
+    }
+
+    private void scheduleArrival() {
+        schedule(exponential(TimeUnit.SECONDS.toMillis(1) / tps), () -> {
+            minerHelper.offerRandomTransaction(blockchain);
+            scheduleArrival();
+        });
+    }
+
+    private void commitBlock() {
+        Miner miner = miners.get(random.nextInt(miners.size()));
+        try {
+            Blockchain.Challenge challenge = blockchain.getChallenge(miner);
+            long nonce = random.nextLong();
+            String hash = BlockchainUtil.calculateBlockHash(challenge.getMerkleRoot(), challenge.getComplexity(), nonce, challenge.getLastHash());
+            blockchain.offerBlock(new Block(challenge.getNextBlockId(), challenge.getComplexity(), nonce, hash, challenge.getMerkleRoot(),
+                    miner.getTitle(), challenge.getTransactions()));
+        } catch (BlockchainException | InvalidBlockException | TransactionException e) {
+            log.warn("Simulated block of {} rejected: {}", miner.getTitle(), e.getMessage());
+        }
+        scheduleBlock();
+    }
+
+    private long exponential(double meanMillis) {
+        return Math.round(-Math.log(1 - random.nextDouble()) * meanMillis);
+    }
+
+    private void schedule(long delayMillis, Runnable action) {
+        events.add(new Event(clock.millis() + delayMillis, eventCounter++, action));
+    }
+
+    /**
+     * Action due at the given simulated moment, events of the same moment run in the order they were scheduled
+     */
+    private static class Event implements Comparable<Event> {
+        private final long time;
+        private final long sequence;
+        private final Runnable action;
+
+        private Event(long time, long sequence, Runnable action) {
+            this.time = time;
+            this.sequence = sequence;
+            this.action = action;
+        }
+
+        @Override
+        public int compareTo(Event o) {
+            int byTime = Long.compare(time, o.time);
+            return byTime != 0 ? byTime : Long.compare(sequence, o.sequence);
+        }
+    }
+}
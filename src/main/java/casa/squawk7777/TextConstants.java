@@ -7,14 +7,37 @@ public class TextConstants {
     public static final String NOT_MEET_COMPLEXITY = "Block hash does not meet the required complexity";
     public static final String NOT_PRESENT_IN_THE_POOL = "At least one of transactions is not present in the pool";
     public static final String HASH_DIFFERS_FROM_CALCULATED = "Block hash differs from calculated";
+    public static final String MERKLE_ROOT_DIFFERS_FROM_CALCULATED = "Block Merkle root differs from calculated";
+    public static final String EXCEEDS_SIZE_LIMITS = "Block exceeds transaction number or size limit";
+    public static final String INVALID_REWARD = "Block carries invalid reward transaction";
+    public static final String CHAIN_HAS_INVALID_BLOCK = "Block #%d of the chain is invalid: %s";
 
     public static final String UNABLE_TO_CALCULATE_HASH = "Unable to calculate hash";
     public static final String UNABLE_TO_GENERATE_KEYS = "Unable to generate security keys";
+    public static final String UNABLE_TO_ACCESS_BLOCK_STORE = "Unable to access block store";
+    public static final String BLOCK_STORE_CORRUPTED = "Block store is corrupted";
+    public static final String UNABLE_TO_ACCESS_CHECKPOINTS = "Unable to access checkpoint store";
+    public static final String UNABLE_TO_REMOVE_BLOCK = "Unable to remove the last block";
+    public static final String UNABLE_TO_EXPORT_CHAIN = "Unable to export chain";
+    public static final String UNABLE_TO_IMPORT_CHAIN = "Unable to import chain";
+    public static final String CHAIN_EXPORT_CORRUPTED = "Chain export is corrupted";
+    public static final String INVALID_BLOOM_FILTER_PARAMETERS = "Bloom filter capacity must be positive and false positive rate within (0, 1)";
+    public static final String CHECKPOINT_CORRUPTED = "Checkpoint is corrupted";
+    public static final String UNABLE_TO_START_NODE = "Unable to start gossip node";
+    public static final String UNSUPPORTED_KEY_ALGORITHM = "Unsupported public key algorithm";
     public static final String SIGNATURE_IS_INVALID = "Signature of this data is invalid!";
+    public static final String SIGNER_IS_NOT_SENDER = "Transaction is signed by a key which doesn't belong to the sender";
+    public static final String ACCOUNT_ADDRESS_MISMATCH = "Account address doesn't match its public key";
 
     public static final String BLOCKCHAIN_CLOSED = "Blockchain is closed";
     public static final String TRANSACTION_ALREADY_EXIST = "Transaction with such ID is already exist";
+    public static final String INVALID_NONCE = "Transaction nonce doesn't follow the last nonce of the sender";
+    public static final String SIGNATURE_OF_RELAYED_IS_INVALID = "Signature of relayed transaction is invalid";
     public static final String SENDER_IS_SHORT_ON_FUNDS = "Sender doesn't have enough funds to cary out transaction";
+    public static final String ADMISSION_QUEUE_IS_FULL = "Transaction admission queue is full";
+    public static final String ADMISSION_PIPELINE_CLOSED = "Transaction admission pipeline is closed";
 
     public static final String CHALLENGE_FINISHED = "Generation aborted. Current challenge is finished by someone else, asking for new...";
+    public static final String NONCE_SPACE_EXHAUSTED = "Generation aborted. Nonce space of the challenge is exhausted";
+    public static final String MINING_POOL_UNAVAILABLE = "Mining worker pool doesn't accept new tasks";
 }
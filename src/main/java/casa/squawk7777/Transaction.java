@@ -9,14 +9,26 @@ public class Transaction implements Signable, Comparable<Transaction> {
     private final Miner sender;
     private final Miner recipient;
     private final long amount;
+    private final long nonce;
     private PublicKey publicKey;
     private byte[] signature;
 
+    /**
+     * Creates transaction without nonce, such as reward issued by the chain owner
+     */
     public Transaction(Integer id, Miner sender, Miner recipient, long amount) {
+        this(id, sender, recipient, amount, 0L);
+    }
+
+    /**
+     * @param nonce sequence number of the transaction among ones sent by the sender, starting with 1
+     */
+    public Transaction(Integer id, Miner sender, Miner recipient, long amount, long nonce) {
         this.id = id;
         this.sender = sender;
         this.recipient = recipient;
         this.amount = amount;
+        this.nonce = nonce;
     }
 
     public Integer getId() {
@@ -35,6 +47,10 @@ public class Transaction implements Signable, Comparable<Transaction> {
         return amount;
     }
 
+    public long getNonce() {
+        return nonce;
+    }
+
     @Override
     public void sign(byte[] signature, PublicKey publicKey) {
         this.publicKey = publicKey;
@@ -52,8 +68,13 @@ public class Transaction implements Signable, Comparable<Transaction> {
     }
 
     @Override
-    public String getDigest() {
-        return "" + id + sender.hashCode() + recipient.hashCode() + amount;
+    public byte[] getSignerAddress() {
+        return sender.getAddress();
+    }
+
+    @Override
+    public byte[] getDigest() {
+        return BinaryCodec.getDigest(this);
     }
 
     @Override
@@ -72,6 +93,7 @@ public class Transaction implements Signable, Comparable<Transaction> {
         if (o == null || getClass() != o.getClass()) return false;
         Transaction that = (Transaction) o;
         return amount == that.amount &&
+                nonce == that.nonce &&
                 id.equals(that.id) &&
                 sender.equals(that.sender) &&
                 recipient.equals(that.recipient) &&
@@ -81,7 +103,7 @@ public class Transaction implements Signable, Comparable<Transaction> {
 
     @Override
     public int hashCode() {
-        int result = Objects.hash(id, sender, recipient, amount, publicKey);
+        int result = Objects.hash(id, sender, recipient, amount, nonce, publicKey);
         result = 31 * result + Arrays.hashCode(signature);
         return result;
     }
@@ -0,0 +1,275 @@
+package casa.squawk7777;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Secondary indexes of confirmed transactions maintained incrementally by {@link Blockchain}: location of every
+ * transaction by its ID and per-account postings in chain order. Location is packed as {@code [block ID][position]},
+ * where position is the transaction's place in the block's ID ordered set (the same as its Merkle tree leaf).
+ * Mutations are expected under the blockchain write lock, lookups are lock-free.
+ * Index is written with the checkpoint, so restart doesn't decode blocks the checkpoint covers:
+ * <pre>
+ * [count:int]{[transaction ID:int][location:long]}[count:int]{[account][count:int]{[location:long]}}
+ * </pre>
+ */
+public class TransactionIndex {
+    private final Map<Integer, Long> locationsById;
+    private final Map<Miner, Postings> postingsByAccount;
+
+    public TransactionIndex() {
+        this(new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+    }
+
+    private TransactionIndex(Map<Integer, Long> locationsById, Map<Miner, Postings> postingsByAccount) {
+        this.locationsById = locationsById;
+        this.postingsByAccount = postingsByAccount;
+    }
+
+    /**
+     * Copies entries of the index to be written with a checkpoint, must be called under the blockchain write lock.
+     * Postings are immutable views, so the copy shares them and costs a map entry per transaction and account.
+     */
+    TransactionIndex copy() {
+        return new TransactionIndex(new HashMap<>(locationsById), new HashMap<>(postingsByAccount));
+    }
+
+    /**
+     * Loads entries of the index restored from a checkpoint, blocks after it are added one by one
+     */
+    void restore(TransactionIndex checkpointed) {
+        locationsById.putAll(checkpointed.locationsById);
+        postingsByAccount.putAll(checkpointed.postingsByAccount);
+    }
+
+    /**
+     * @return IDs of indexed transactions, a live view
+     */
+    Set<Integer> getTransactionIds() {
+        return locationsById.keySet();
+    }
+
+    int encodedSize() {
+        int size = Integer.BYTES * 2 + locationsById.size() * (Integer.BYTES + Long.BYTES);
+        for (Map.Entry<Miner, Postings> entry : postingsByAccount.entrySet()) {
+            size += BinaryCodec.accountSize(entry.getKey()) + Integer.BYTES + entry.getValue().size() * Long.BYTES;
+        }
+        return size;
+    }
+
+    void writeTo(ByteBuffer out) {
+        out.putInt(locationsById.size());
+        locationsById.forEach((id, location) -> out.putInt(id).putLong(location));
+        out.putInt(postingsByAccount.size());
+        postingsByAccount.forEach((account, postings) -> {
+            BinaryCodec.writeAccount(out, account);
+            out.putInt(postings.size());
+            for (int i = postings.start; i < postings.end; i++) {
+                out.putLong(postings.locations[i]);
+            }
+        });
+    }
+
+    static TransactionIndex readFrom(ByteBuffer in, BinaryCodec codec) throws GeneralSecurityException {
+        int transactionNumber = in.getInt();
+        Map<Integer, Long> locationsById = new HashMap<>(transactionNumber * 2);
+        for (int i = 0; i < transactionNumber; i++) {
+            locationsById.put(in.getInt(), in.getLong());
+        }
+        int accountNumber = in.getInt();
+        Map<Miner, Postings> postingsByAccount = new HashMap<>(accountNumber * 2);
+        for (int i = 0; i < accountNumber; i++) {
+            Miner account = codec.readAccount(in);
+            int size = in.getInt();
+            long[] locations = new long[Math.max(4, size)];
+            for (int j = 0; j < size; j++) {
+                locations[j] = in.getLong();
+            }
+            postingsByAccount.put(account, new Postings(locations, 0, size));
+        }
+        return new TransactionIndex(locationsById, postingsByAccount);
+    }
+
+    /**
+     * Indexes transactions of the block appended to the chain
+     */
+    void addBlock(Block block) {
+        int position = 0;
+        for (Transaction transaction : block.getOrderedTransactions()) {
+            long location = pack(block.getId(), position++);
+            locationsById.put(transaction.getId(), location);
+            addPosting(transaction.getSender(), location);
+            if (!transaction.getRecipient().equals(transaction.getSender())) {
+                addPosting(transaction.getRecipient(), location);
+            }
+        }
+    }
+
+    /**
+     * Drops entries of the block which body is about to be evicted, blocks must be pruned in chain order
+     */
+    void pruneBlock(Block block) {
+        for (Transaction transaction : block.getTransactions()) {
+            locationsById.remove(transaction.getId());
+            dropPostings(transaction.getSender(), block.getId());
+            dropPostings(transaction.getRecipient(), block.getId());
+        }
+    }
+
+    /**
+     * Drops entries of the last block which is removed from the chain
+     */
+    void removeBlock(Block block) {
+        for (Transaction transaction : block.getTransactions()) {
+            locationsById.remove(transaction.getId());
+            dropLastPostings(transaction.getSender(), block.getId());
+            dropLastPostings(transaction.getRecipient(), block.getId());
+        }
+    }
+
+    private void addPosting(Miner miner, long location) {
+        Postings postings = postingsByAccount.get(miner);
+        postingsByAccount.put(miner, postings == null ? Postings.of(location) : postings.append(location));
+    }
+
+    private void dropPostings(Miner miner, int lastBlockId) {
+        Postings postings = postingsByAccount.get(miner);
+        if (postings != null) {
+            Postings remaining = postings.dropThrough(lastBlockId);
+            if (remaining.size() == 0) {
+                postingsByAccount.remove(miner);
+            } else if (remaining != postings) {
+                postingsByAccount.put(miner, remaining);
+            }
+        }
+    }
+
+    private void dropLastPostings(Miner miner, int blockId) {
+        Postings postings = postingsByAccount.get(miner);
+        if (postings != null) {
+            Postings remaining = postings.dropFrom(blockId);
+            if (remaining.size() == 0) {
+                postingsByAccount.remove(miner);
+            } else if (remaining != postings) {
+                postingsByAccount.put(miner, remaining);
+            }
+        }
+    }
+
+    /**
+     * @return packed location or -1 if transaction is not confirmed
+     */
+    public long getLocation(Integer transactionId) {
+        return locationsById.getOrDefault(transactionId, -1L);
+    }
+
+    public int getHistorySize(Miner miner) {
+        Postings postings = postingsByAccount.get(miner);
+        return postings == null ? 0 : postings.size();
+    }
+
+    /**
+     * Returns page of account postings, most recent first
+     *
+     * @param offset number of most recent postings to skip
+     * @param limit  maximum page size
+     */
+    public long[] getHistory(Miner miner, int offset, int limit) {
+        Postings postings = postingsByAccount.get(miner);
+        if (postings == null) {
+            return new long[0];
+        }
+        int from = Math.max(postings.start, postings.end - offset);
+        int pageSize = Math.max(0, Math.min(limit, from - postings.start));
+        long[] page = new long[pageSize];
+        for (int i = 0; i < pageSize; i++) {
+            page[i] = postings.locations[from - 1 - i];
+        }
+        return page;
+    }
+
+    public static long pack(int blockId, int position) {
+        return ((long) blockId << 32) | position;
+    }
+
+    public static int getBlockId(long location) {
+        return (int) (location >>> 32);
+    }
+
+    public static int getPosition(long location) {
+        return (int) location;
+    }
+
+    /**
+     * Immutable view {@code [start, end)} of the locations array. Versions share the array: appending writes
+     * beyond the end of all published views, so readers never see the slot changing.
+     */
+    private static class Postings {
+        private final long[] locations;
+        private final int start;
+        private final int end;
+
+        private Postings(long[] locations, int start, int end) {
+            this.locations = locations;
+            this.start = start;
+            this.end = end;
+        }
+
+        private static Postings of(long location) {
+            long[] locations = new long[4];
+            locations[0] = location;
+            return new Postings(locations, 0, 1);
+        }
+
+        private int size() {
+            return end - start;
+        }
+
+        private Postings append(long location) {
+            long[] target = locations;
+            int offset = start;
+            if (end == locations.length) {
+                target = new long[Math.max(4, size() * 2)];
+                System.arraycopy(locations, start, target, 0, size());
+                offset = 0;
+            }
+            int newEnd = end - start + offset;
+            target[newEnd] = location;
+            return new Postings(target, offset, newEnd + 1);
+        }
+
+        private Postings dropThrough(int lastBlockId) {
+            int newStart = start;
+            while (newStart < end && getBlockId(locations[newStart]) <= lastBlockId) {
+                newStart++;
+            }
+            if (newStart == start) {
+                return this;
+            }
+            if (newStart - start > locations.length / 2) {
+                return new Postings(Arrays.copyOfRange(locations, newStart, Math.max(newStart + 4, end)), 0, end - newStart);
+            }
+            return new Postings(locations, newStart, end);
+        }
+
+        /**
+         * Drops the tail starting with given block. The remaining part is copied, otherwise the next append
+         * would overwrite slots still visible through this view.
+         */
+        private Postings dropFrom(int firstBlockId) {
+            int newEnd = end;
+            while (newEnd > start && getBlockId(locations[newEnd - 1]) >= firstBlockId) {
+                newEnd--;
+            }
+            if (newEnd == end) {
+                return this;
+            }
+            return new Postings(Arrays.copyOfRange(locations, start, Math.max(start + 4, newEnd)), 0, newEnd - start);
+        }
+    }
+}
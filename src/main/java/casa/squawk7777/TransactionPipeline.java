@@ -0,0 +1,189 @@
+package casa.squawk7777;
+
+import casa.squawk7777.exceptions.BlockchainException;
+import casa.squawk7777.exceptions.InvalidSignatureException;
+import casa.squawk7777.exceptions.TransactionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transaction admission pipeline: bounded inbound queue, parallel signature verification stage
+ * and single commit stage which admits verified transactions to the blockchain in batches.
+ */
+public class TransactionPipeline implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(TransactionPipeline.class);
+    private static final long SUBMIT_POLL_MS = 100L;
+
+    private final Blockchain blockchain;
+    private final BlockingQueue<PendingTransaction> inboundQueue;
+    private final BlockingQueue<PendingTransaction> verifiedQueue;
+    private final ExecutorService verifiers;
+    private final Thread committer;
+    private final int batchSize;
+
+    private volatile boolean isClosed;
+
+    public TransactionPipeline(Blockchain blockchain, int queueCapacity, int verifierNumber, int batchSize) {
+        this.blockchain = blockchain;
+        this.inboundQueue = new ArrayBlockingQueue<>(queueCapacity);
+        this.verifiedQueue = new ArrayBlockingQueue<>(queueCapacity);
+        this.verifiers = Executors.newFixedThreadPool(verifierNumber, r -> {
+            Thread thread = new Thread(r, "transaction-verifier");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.batchSize = batchSize;
+
+        for (int i = 0; i < verifierNumber; i++) {
+            verifiers.execute(this::verifyLoop);
+        }
+        this.committer = new Thread(this::commitLoop, "transaction-committer");
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+
+    /**
+     * Submits transaction for admission, blocking while the inbound queue is full. Waiting is done in short slices,
+     * so the caller is released once the pipeline is closed.
+     *
+     * @return future completed with the transaction once accepted to the pool or exceptionally with rejection reason
+     */
+    public CompletableFuture<Transaction> submit(Transaction transaction) throws InterruptedException {
+        PendingTransaction pending = new PendingTransaction(transaction);
+        while (!isClosed) {
+            if (inboundQueue.offer(pending, SUBMIT_POLL_MS, TimeUnit.MILLISECONDS)) {
+                failIfClosed();
+                return pending.result;
+            }
+        }
+        pending.result.completeExceptionally(new BlockchainException(TextConstants.ADMISSION_PIPELINE_CLOSED));
+        return pending.result;
+    }
+
+    /**
+     * Submits transaction for admission without waiting, rejecting it if the inbound queue is full
+     */
+    public CompletableFuture<Transaction> trySubmit(Transaction transaction) {
+        PendingTransaction pending = new PendingTransaction(transaction);
+        if (isClosed) {
+            pending.result.completeExceptionally(new BlockchainException(TextConstants.ADMISSION_PIPELINE_CLOSED));
+        } else if (!inboundQueue.offer(pending)) {
+            TransactionException rejection = new TransactionException(TextConstants.ADMISSION_QUEUE_IS_FULL);
+            blockchain.getMetrics().recordRejected(rejection);
+            pending.result.completeExceptionally(rejection);
+        } else {
+            failIfClosed();
+        }
+        return pending.result;
+    }
+
+    public int getQueueDepth() {
+        return inboundQueue.size() + verifiedQueue.size();
+    }
+
+    private void verifyLoop() {
+        try {
+            while (!isClosed) {
+                PendingTransaction pending = inboundQueue.take();
+                try {
+                    SecurityUtil.verifySignature(pending.transaction);
+                    verifiedQueue.put(pending);
+                    failIfClosed();
+                } catch (GeneralSecurityException | InvalidSignatureException e) {
+                    log.debug("Transaction #{} rejected: {}", pending.transaction.getId(), e.getMessage());
+                    blockchain.getMetrics().recordRejected(e);
+                    pending.result.completeExceptionally(e);
+                } catch (InterruptedException e) {
+                    pending.result.completeExceptionally(new BlockchainException(TextConstants.ADMISSION_PIPELINE_CLOSED));
+                    throw e;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void commitLoop() {
+        List<PendingTransaction> batch = new ArrayList<>(batchSize);
+        List<Transaction> transactions = new ArrayList<>(batchSize);
+        try {
+            while (!isClosed) {
+                batch.add(verifiedQueue.take());
+                verifiedQueue.drainTo(batch, batchSize - 1);
+                batch.forEach(p -> transactions.add(p.transaction));
+
+                try {
+                    List<Exception> results = blockchain.admitVerifiedTransactions(transactions);
+                    log.trace("Committed batch of {} transactions", batch.size());
+                    long committedAt = System.nanoTime();
+                    for (int i = 0; i < batch.size(); i++) {
+                        Exception rejection = results.get(i);
+                        if (rejection == null) {
+                            blockchain.getMetrics().recordAccepted(committedAt - batch.get(i).submittedAt);
+                            batch.get(i).result.complete(batch.get(i).transaction);
+                        } else {
+                            batch.get(i).result.completeExceptionally(rejection);
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    // the committer keeps running for the next batches, only this one is failed
+                    log.error("Unable to commit batch of {} transactions", batch.size(), e);
+                    batch.forEach(p -> p.result.completeExceptionally(e));
+                }
+                batch.clear();
+                transactions.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops pipeline stages, transactions which are not committed yet are rejected
+     */
+    @Override
+    public void close() {
+        isClosed = true;
+        verifiers.shutdownNow();
+        committer.interrupt();
+        failAbandoned();
+    }
+
+    /**
+     * Fails transactions just enqueued if the pipeline was closed meanwhile, nobody would take them otherwise
+     */
+    private void failIfClosed() {
+        if (isClosed) {
+            failAbandoned();
+        }
+    }
+
+    private void failAbandoned() {
+        List<PendingTransaction> abandoned = new ArrayList<>();
+        inboundQueue.drainTo(abandoned);
+        verifiedQueue.drainTo(abandoned);
+        abandoned.forEach(p -> p.result.completeExceptionally(new BlockchainException(TextConstants.ADMISSION_PIPELINE_CLOSED)));
+    }
+
+    private static class PendingTransaction {
+        private final Transaction transaction;
+        private final CompletableFuture<Transaction> result;
+        private final long submittedAt;
+
+        private PendingTransaction(Transaction transaction) {
+            this.transaction = transaction;
+            this.result = new CompletableFuture<>();
+            this.submittedAt = System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package casa.squawk7777;
+
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Immutable set of transactions ordered by ID, backed by persistent AVL tree. Adding or removing a transaction
+ * returns new version which shares all but {@code O(log n)} nodes with the previous one, so versions are cheap
+ * to publish and safe to read from any thread without locking. Lookups by ID and by position are {@code O(log n)}.
+ */
+public final class TransactionSet extends AbstractSet<Transaction> {
+    private static final TransactionSet EMPTY = new TransactionSet(null);
+
+    private final Node root;
+
+    private TransactionSet(Node root) {
+        this.root = root;
+    }
+
+    public static TransactionSet empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Builds balanced set in linear time when source is already ordered by ID
+     */
+    public static TransactionSet of(Collection<Transaction> transactions) {
+        if (transactions instanceof TransactionSet) {
+            return (TransactionSet) transactions;
+        }
+        List<Transaction> ordered = new ArrayList<>(inIdOrder(transactions));
+        return new TransactionSet(build(ordered, 0, ordered.size()));
+    }
+
+    /**
+     * Returns given transactions as is if they are already iterated in ID order, otherwise sorted copy
+     */
+    public static Collection<Transaction> inIdOrder(Collection<Transaction> transactions) {
+        if (transactions instanceof TransactionSet
+                || (transactions instanceof SortedSet && ((SortedSet<Transaction>) transactions).comparator() == null)) {
+            return transactions;
+        }
+        return new TreeSet<>(transactions);
+    }
+
+    /**
+     * @return new version with the transaction added or this set if transaction with the same ID is already present
+     */
+    public TransactionSet with(Transaction transaction) {
+        Node updated = insert(root, transaction);
+        return updated == root ? this : new TransactionSet(updated);
+    }
+
+    /**
+     * @return new version without the transaction or this set if it is not present
+     */
+    public TransactionSet without(Transaction transaction) {
+        if (!contains(transaction)) {
+            return this;
+        }
+        return new TransactionSet(remove(root, transaction.getId()));
+    }
+
+    public Transaction findById(Integer id) {
+        Node node = root;
+        while (node != null) {
+            int comparison = id.compareTo(node.transaction.getId());
+            if (comparison == 0) {
+                return node.transaction;
+            }
+            node = comparison < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    public boolean containsId(Integer id) {
+        return findById(id) != null;
+    }
+
+    /**
+     * @return transaction at given position in ID order
+     */
+    public Transaction getAt(int position) {
+        if (position < 0 || position >= size()) {
+            throw new IndexOutOfBoundsException("Position " + position + " is out of range 0.." + (size() - 1));
+        }
+        Node node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (position == leftSize) {
+                return node.transaction;
+            }
+            if (position < leftSize) {
+                node = node.left;
+            } else {
+                position -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * @return transaction with the highest ID or null if the set is empty
+     */
+    public Transaction last() {
+        Node node = root;
+        if (node == null) {
+            return null;
+        }
+        while (node.right != null) {
+            node = node.right;
+        }
+        return node.transaction;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Transaction)) {
+            return false;
+        }
+        Transaction transaction = (Transaction) o;
+        return transaction.equals(findById(transaction.getId()));
+    }
+
+    @Override
+    public int size() {
+        return size(root);
+    }
+
+    @Override
+    public Iterator<Transaction> iterator() {
+        return new Iterator<>() {
+            private final Deque<Node> path = new ArrayDeque<>();
+            private Node next = root;
+
+            @Override
+            public boolean hasNext() {
+                return next != null || !path.isEmpty();
+            }
+
+            @Override
+            public Transaction next() {
+                while (next != null) {
+                    path.push(next);
+                    next = next.left;
+                }
+                if (path.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                Node node = path.pop();
+                next = node.right;
+                return node.transaction;
+            }
+        };
+    }
+
+    private static Node build(List<Transaction> ordered, int from, int to) {
+        if (from >= to) {
+            return null;
+        }
+        int middle = (from + to) >>> 1;
+        return node(ordered.get(middle), build(ordered, from, middle), build(ordered, middle + 1, to));
+    }
+
+    private static Node insert(Node node, Transaction transaction) {
+        if (node == null) {
+            return node(transaction, null, null);
+        }
+        int comparison = transaction.getId().compareTo(node.transaction.getId());
+        if (comparison < 0) {
+            Node left = insert(node.left, transaction);
+            return left == node.left ? node : balance(node.transaction, left, node.right);
+        } else if (comparison > 0) {
+            Node right = insert(node.right, transaction);
+            return right == node.right ? node : balance(node.transaction, node.left, right);
+        }
+        return node;
+    }
+
+    private static Node remove(Node node, Integer id) {
+        int comparison = id.compareTo(node.transaction.getId());
+        if (comparison < 0) {
+            return balance(node.transaction, remove(node.left, id), node.right);
+        } else if (comparison > 0) {
+            return balance(node.transaction, node.left, remove(node.right, id));
+        }
+        if (node.left == null) {
+            return node.right;
+        }
+        if (node.right == null) {
+            return node.left;
+        }
+        Node successor = node.right;
+        while (successor.left != null) {
+            successor = successor.left;
+        }
+        return balance(successor.transaction, node.left, removeFirst(node.right));
+    }
+
+    private static Node removeFirst(Node node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        return balance(node.transaction, removeFirst(node.left), node.right);
+    }
+
+    private static Node balance(Transaction transaction, Node left, Node right) {
+        int leftHeight = height(left);
+        int rightHeight = height(right);
+        if (leftHeight > rightHeight + 1) {
+            if (height(left.left) >= height(left.right)) {
+                return node(left.transaction, left.left, node(transaction, left.right, right));
+            }
+            return node(left.right.transaction,
+                    node(left.transaction, left.left, left.right.left),
+                    node(transaction, left.right.right, right));
+        }
+        if (rightHeight > leftHeight + 1) {
+            if (height(right.right) >= height(right.left)) {
+                return node(right.transaction, node(transaction, left, right.left), right.right);
+            }
+            return node(right.left.transaction,
+                    node(transaction, left, right.left.left),
+                    node(right.transaction, right.left.right, right.right));
+        }
+        return node(transaction, left, right);
+    }
+
+    private static Node node(Transaction transaction, Node left, Node right) {
+        return new Node(transaction, left, right);
+    }
+
+    private static int height(Node node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static final class Node {
+        private final Transaction transaction;
+        private final Node left;
+        private final Node right;
+        private final int height;
+        private final int size;
+
+        private Node(Transaction transaction, Node left, Node right) {
+            this.transaction = transaction;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(height(left), height(right)) + 1;
+            this.size = size(left) + size(right) + 1;
+        }
+    }
+}